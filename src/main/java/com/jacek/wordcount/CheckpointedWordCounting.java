@@ -0,0 +1,370 @@
+package com.jacek.wordcount;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Counts files in batches on a pool of threads, checkpointing the merged counts and the set of completed files
+ * periodically, so that a run which dies is resumed from its last checkpoint and counts only the remaining files
+ * <p>
+ * Workers hand completed batches to the calling thread, which merges them; every interval it copies the merged
+ * counts and completed files, between two merges, and a writer thread writes the copy to a temporary file,
+ * forced to disk and then renamed over the checkpoint, so a crash mid write leaves the previous checkpoint intact.
+ * Workers never wait for a checkpoint, and a checkpoint due while the previous one is still being written is skipped
+ * <p>
+ * A checkpoint is for the set of files it was written for: files are identified by their index in the list of
+ * their absolute paths in order, with a fingerprint of the list, of the size, modification time and multiplicity
+ * of every file and of the token filter. A checkpoint of another set of files, of files changed since, or counted
+ * with another filter, is ignored and all files are counted again. The last checkpoint, of a completed run, is kept:
+ * counting the same unchanged files again with the same filter just reads it
+ * <p>
+ * File layout (big endian):
+ * <pre>
+ *   int magic, int version, long fingerprint of the files, int number of files
+ *   int completed, int[completed] indexes of completed files
+ *   int size, size times: int length, byte[length] UTF-8 encoded word, long count
+ * </pre>
+ */
+final class CheckpointedWordCounting implements WordCountingService {
+    private static final Logger log = Logger.getLogger(CheckpointedWordCounting.class.getName());
+    static final long DEFAULT_INTERVAL_MILLIS = 60_000L;
+    private static final long BATCH_BYTES = 4L << 20;
+    private static final int BATCH_FILES = 64;
+    private static final int MAGIC = 0x57434350;   // "WCCP"
+    private static final int VERSION = 1;
+
+    private final Path checkpoint;
+    private final long intervalMillis;
+    private final int parallelism;
+    private final TokenFilter tokenFilter;
+
+    /**
+     * @param checkpoint     checkpoint file to resume from, if it exists, and to write
+     * @param intervalMillis minimum time between checkpoints before the last one
+     * @param parallelism    number of counting threads
+     * @param tokenFilter    tokens it rejects are not counted
+     */
+    CheckpointedWordCounting(final Path checkpoint, final long intervalMillis, final int parallelism,
+                             final TokenFilter tokenFilter) {
+        checkArgument(intervalMillis >= 0);
+        checkArgument(parallelism > 0);
+        this.checkpoint = checkpoint;
+        this.intervalMillis = intervalMillis;
+        this.parallelism = parallelism;
+        this.tokenFilter = tokenFilter;
+    }
+
+    /**
+     * Counts and completed files, as written to or read from a checkpoint file
+     */
+    static final class Checkpoint {
+        final long fingerprint;
+        final int fileCount;
+        final BitSet completed;
+        final List<WordCounter.WordCount> wordCounts;
+
+        Checkpoint(final long fingerprint, final int fileCount, final BitSet completed,
+                   final List<WordCounter.WordCount> wordCounts) {
+            this.fingerprint = fingerprint;
+            this.fileCount = fileCount;
+            this.completed = completed;
+            this.wordCounts = wordCounts;
+        }
+    }
+
+    private static final class Batch {
+        private final int[] indexes;
+        private final WordCounter wordCounter;
+
+        Batch(final int[] indexes, final WordCounter wordCounter) {
+            this.indexes = indexes;
+            this.wordCounter = wordCounter;
+        }
+    }
+
+    /**
+     * @return indexes of the files in order of their absolute paths, the order their indexes in a checkpoint refer to
+     */
+    private static int[] order(final List<File> files) {
+        final List<String> paths = new ArrayList<>(files.size());
+        for (final File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        return IntStream.range(0, files.size()).boxed()
+                .sorted(Comparator.comparing(paths::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * @return the absolute files in order of their paths
+     */
+    static List<File> sorted(final List<File> files) {
+        final List<File> sorted = new ArrayList<>(files.size());
+        for (final int i : order(files)) {
+            sorted.add(files.get(i).getAbsoluteFile());
+        }
+        return sorted;
+    }
+
+    /**
+     * @param sorted         files as returned by sorted
+     * @param multiplicities aligned with sorted files, or null if each is counted once
+     * @param tokenFilter    filter the files are counted with
+     * @return hash of the paths, sizes, modification times and multiplicities of the files, and of the filter
+     */
+    static long fingerprint(final List<File> sorted, final int[] multiplicities, final TokenFilter tokenFilter) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher().putLong(tokenFilter.digest());
+        for (int i = 0; i < sorted.size(); i++) {
+            final File file = sorted.get(i);
+            hasher.putString(file.getPath(), StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putLong(file.length())
+                    .putLong(file.lastModified())
+                    .putInt(multiplicities == null ? 1 : multiplicities[i]);
+        }
+        return hasher.hash().asLong();
+    }
+
+    @Override
+    public WordCounter countWords(final List<File> files) throws Exception {
+        return countWords(files, null);
+    }
+
+    /**
+     * All files are counted in one checkpointed run; a file of multiplicity above 1 is counted once, and added
+     * multiplied
+     */
+    @Override
+    public WordCounter countWords(final List<File> files, final int[] multiplicities) throws Exception {
+        checkArgument(multiplicities == null || multiplicities.length == files.size());
+        final int[] order = order(files);
+        final List<File> sorted = new ArrayList<>(files.size());
+        final int[] sortedMultiplicities = multiplicities == null ? null : new int[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            sorted.add(files.get(order[i]).getAbsoluteFile());
+            if (multiplicities != null) {
+                sortedMultiplicities[i] = multiplicities[order[i]];
+            }
+        }
+        final long fingerprint = fingerprint(sorted, sortedMultiplicities, tokenFilter);
+        final WordCounter total = new WordCounter();
+        final BitSet completed = new BitSet(sorted.size());
+        final Checkpoint restored = restore(fingerprint, sorted.size());
+        if (restored != null) {
+            for (final WordCounter.WordCount wordCount : restored.wordCounts) {
+                total.countWord(wordCount.getWord(), wordCount.getCount());
+            }
+            completed.or(restored.completed);
+            log.info(String.format("resuming from %s with %d of %d files counted",
+                    checkpoint, completed.cardinality(), sorted.size()));
+        }
+        final List<int[]> batches = batches(sorted, completed);
+        final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            final CompletionService<Batch> completionService = new ExecutorCompletionService<>(pool);
+            for (final int[] batch : batches) {
+                completionService.submit(() -> {
+                    final List<File> batchFiles = new ArrayList<>(batch.length);
+                    final int[] batchMultiplicities = sortedMultiplicities == null ? null : new int[batch.length];
+                    for (int j = 0; j < batch.length; j++) {
+                        batchFiles.add(sorted.get(batch[j]));
+                        if (sortedMultiplicities != null) {
+                            batchMultiplicities[j] = sortedMultiplicities[batch[j]];
+                        }
+                    }
+                    final WordCounter wordCounter = new WordCounter();
+                    Core.countWordsInFiles(batchFiles, batchMultiplicities, tokenFilter, false, wordCounter);
+                    return new Batch(batch, wordCounter);
+                });
+            }
+            Future<?> writing = null;
+            long lastCheckpointNanos = System.nanoTime();
+            for (int remaining = batches.size(); remaining > 0; remaining--) {
+                final Batch batch;
+                try {
+                    batch = completionService.take().get();
+                } catch (ExecutionException e) {
+                    // keep what has been counted, for the run resuming this one
+                    if (writing != null) {
+                        writing.get();
+                    }
+                    writeQuietly(snapshot(fingerprint, sorted.size(), completed, total));
+                    throw e;
+                }
+                total.mergeIn(batch.wordCounter);
+                for (final int i : batch.indexes) {
+                    completed.set(i);
+                }
+                if ((writing == null || writing.isDone()) && remaining > 1
+                        && System.nanoTime() - lastCheckpointNanos >= intervalMillis * 1_000_000L) {
+                    final Checkpoint snapshot = snapshot(fingerprint, sorted.size(), completed, total);
+                    writing = writer.submit(() -> writeQuietly(snapshot));
+                    lastCheckpointNanos = System.nanoTime();
+                }
+            }
+            if (writing != null) {
+                writing.get();
+            }
+            writeQuietly(snapshot(fingerprint, sorted.size(), completed, total));
+            return total;
+        } finally {
+            pool.shutdownNow();
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * @return batches of indexes of files not completed, of up to BATCH_FILES files or about BATCH_BYTES
+     */
+    private static List<int[]> batches(final List<File> sorted, final BitSet completed) {
+        final List<int[]> batches = new ArrayList<>();
+        final int[] batch = new int[BATCH_FILES];
+        int n = 0;
+        long bytes = 0L;
+        for (int i = completed.nextClearBit(0); i < sorted.size(); i = completed.nextClearBit(i + 1)) {
+            batch[n++] = i;
+            bytes += sorted.get(i).length();
+            if (bytes >= BATCH_BYTES || n == BATCH_FILES) {
+                batches.add(Arrays.copyOf(batch, n));
+                n = 0;
+                bytes = 0L;
+            }
+        }
+        if (n > 0) {
+            batches.add(Arrays.copyOf(batch, n));
+        }
+        return batches;
+    }
+
+    /**
+     * @return copy of the state, taken on the merging thread, for the writer thread
+     */
+    private static Checkpoint snapshot(final long fingerprint, final int fileCount, final BitSet completed,
+                                       final WordCounter total) {
+        final List<WordCounter.WordCount> wordCounts = new ArrayList<>(total.size());
+        total.getWordCountStream().forEach(wordCounts::add);
+        return new Checkpoint(fingerprint, fileCount, (BitSet) completed.clone(), wordCounts);
+    }
+
+    /**
+     * @return the checkpoint to resume from, or null if there is none for these files
+     */
+    private Checkpoint restore(final long fingerprint, final int fileCount) {
+        try {
+            final Checkpoint restored = read(checkpoint);
+            if (restored.fingerprint == fingerprint && restored.fileCount == fileCount) {
+                return restored;
+            }
+            log.warning(checkpoint + " is a checkpoint of other or changed files or another filter,"
+                    + " counting from the start");
+        } catch (NoSuchFileException e) {
+            // first run
+        } catch (IOException | IllegalArgumentException e) {
+            log.log(Level.WARNING, "cannot resume from " + checkpoint + ", counting from the start: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Checkpoints are best effort: a failed write is logged, and counting goes on
+     */
+    private void writeQuietly(final Checkpoint snapshot) {
+        try {
+            write(checkpoint, snapshot);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "cannot write checkpoint " + checkpoint + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write a checkpoint to a temporary file and rename it over the checkpoint file once it is on disk
+     *
+     * @param path       checkpoint file to create or replace
+     * @param checkpoint state to write
+     * @throws IOException
+     */
+    static void write(final Path path, final Checkpoint checkpoint) throws IOException {
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checkpoint.fingerprint);
+            out.writeInt(checkpoint.fileCount);
+            out.writeInt(checkpoint.completed.cardinality());
+            for (int i = checkpoint.completed.nextSetBit(0); i >= 0; i = checkpoint.completed.nextSetBit(i + 1)) {
+                out.writeInt(i);
+            }
+            out.writeInt(checkpoint.wordCounts.size());
+            for (final WordCounter.WordCount wordCount : checkpoint.wordCounts) {
+                final byte[] word = wordCount.getWord().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(word.length);
+                out.write(word);
+                out.writeLong(wordCount.getCount());
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param path checkpoint file written by write
+     * @return the checkpoint
+     * @throws IOException
+     * @throws IllegalArgumentException if the file is not a checkpoint
+     */
+    static Checkpoint read(final Path path) throws IOException {
+        try (final InputStream is = Files.newInputStream(path);
+             final DataInputStream in = new DataInputStream(new BufferedInputStream(is, 1 << 16))) {
+            checkArgument(in.readInt() == MAGIC, "not a word count checkpoint");
+            final int version = in.readInt();
+            checkArgument(version == VERSION, "unsupported checkpoint version %s", version);
+            final long fingerprint = in.readLong();
+            final int fileCount = in.readInt();
+            final BitSet completed = new BitSet(fileCount);
+            for (int n = in.readInt(); n > 0; n--) {
+                completed.set(in.readInt());
+            }
+            final int size = in.readInt();
+            final List<WordCounter.WordCount> wordCounts = new ArrayList<>(size);
+            for (int n = size; n > 0; n--) {
+                final byte[] word = new byte[in.readInt()];
+                in.readFully(word);
+                wordCounts.add(new WordCounter.WordCount(new String(word, StandardCharsets.UTF_8), in.readLong()));
+            }
+            return new Checkpoint(fingerprint, fileCount, completed, wordCounts);
+        }
+    }
+}
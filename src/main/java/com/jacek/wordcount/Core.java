@@ -11,18 +11,36 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Utilities for the word count project
  */
 final class Core {
     private static final Logger log = Logger.getLogger(Core.class.getName());
+    // size of the reusable char buffer for chunked reading
+    static final int CHUNK_SIZE = 1 << 16;
+    // per thread, so that it stays warm from one batch of files to the next, if counting uses it
+    private static final ThreadLocal<HotWordCache> hotWordCache = ThreadLocal.withInitial(HotWordCache::new);
+
+    /**
+     * Receiver of the chars of cleaned tokens, before they are lower-cased or a String is made of them
+     */
+    interface TokenSink {
+        /**
+         * @param chars buffer holding the token chars[start, end), valid during the call only
+         */
+        void accept(char[] chars, int start, int end);
+    }
 
     /**
      * @param reader      a reader like FileReader, InputStreamReader, StringReader, etc.
@@ -45,22 +63,222 @@ final class Core {
         bufferedReader.close();
     }
 
+    /**
+     * Chunked alternative to line by line reading: fills a reusable char buffer and tokenizes it in place,
+     * carrying a token cut by the end of the buffer over to the next fill.
+     * No String is created for a line, so memory stays flat regardless of line length
+     * (the buffer only grows if a single token is longer than the whole buffer)
+     *
+     * @param reader      a reader like FileReader, InputStreamReader, StringReader, etc.
+     *                    This function closes the reader after exhausting it's contents
+     * @param buffer      reusable buffer, eg. of CHUNK_SIZE chars
+     * @param wordCounter
+     * @throws IOException
+     */
+    static void countWordsFromReader(final Reader reader, final char[] buffer, final WordCounter wordCounter) throws IOException {
+        tokenize(reader, buffer, wordCounter::countWord);
+    }
+
+    /**
+     * Chunked tokenization feeding cleaned, lower-cased tokens, in text order, to a sink
+     *
+     * @param reader a reader; this function closes the reader after exhausting it's contents
+     * @param buffer reusable buffer, eg. of CHUNK_SIZE chars
+     * @param sink   consumer of the sequence of tokens
+     * @throws IOException
+     */
+    static void tokenize(final Reader reader, final char[] buffer, final Consumer<String> sink) throws IOException {
+        tokenize(reader, buffer, TokenFilter.NONE, sink);
+    }
+
+    /**
+     * Chunked tokenization feeding cleaned, lower-cased tokens accepted by a filter, in text order, to a sink
+     *
+     * @param reader a reader; this function closes the reader after exhausting it's contents
+     * @param buffer reusable buffer, eg. of CHUNK_SIZE chars
+     * @param filter tokens it rejects are dropped before a String is created for them
+     * @param sink   consumer of the sequence of tokens
+     * @throws IOException
+     */
+    static void tokenize(final Reader reader, final char[] buffer, final TokenFilter filter,
+                         final Consumer<String> sink) throws IOException {
+        tokenize(reader, buffer, filter, (chars, start, end) -> sink.accept(new String(chars, start, end - start).toLowerCase()));
+    }
+
+    /**
+     * Chunked tokenization feeding the chars of cleaned tokens accepted by a filter, in text order, to a sink
+     *
+     * @param reader a reader; this function closes the reader after exhausting it's contents
+     * @param buffer reusable buffer, eg. of CHUNK_SIZE chars
+     * @param filter tokens it rejects are dropped
+     * @param sink   receiver of the sequence of tokens, not yet lower-cased
+     * @throws IOException
+     */
+    static void tokenize(final Reader reader, final char[] buffer, final TokenFilter filter,
+                         final TokenSink sink) throws IOException {
+        checkArgument(buffer.length > 0);
+        char[] chars = buffer;
+        int length = 0;         // number of valid chars in buffer
+        int tokenStart = -1;    // start of the current token or -1 when between tokens
+        int nRead;
+        while ((nRead = reader.read(chars, length, chars.length - length)) >= 0) {
+            final int scanStart = length;
+            length += nRead;
+            for (int i = scanStart; i < length; i++) {
+                if (isDelimiter(chars[i])) {
+                    if (tokenStart >= 0) {
+                        countToken(chars, tokenStart, i, filter, sink);
+                        tokenStart = -1;
+                    }
+                } else if (tokenStart < 0) {
+                    tokenStart = i;
+                }
+            }
+            if (tokenStart >= 0) {
+                // carry partial token over to the beginning of the buffer
+                final int partial = length - tokenStart;
+                if (partial == chars.length) {
+                    chars = Arrays.copyOf(chars, 2 * chars.length);
+                } else {
+                    System.arraycopy(chars, tokenStart, chars, 0, partial);
+                }
+                tokenStart = 0;
+                length = partial;
+            } else {
+                length = 0;
+            }
+        }
+        if (tokenStart >= 0) {
+            countToken(chars, tokenStart, length, filter, sink);
+        }
+        reader.close();
+    }
+
+    /**
+     * same delimiter set as StringTokenizer's default
+     */
+    private static boolean isDelimiter(final char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' || ch == '\f';
+    }
+
+    /**
+     * Strip leading and trailing punctuation of the token chars[start, end) and pass it on if not empty and accepted
+     */
+    private static void countToken(final char[] chars, int start, int end, final TokenFilter filter,
+                                   final TokenSink sink) {
+        while (end > start && Punctuation.isPunctuation(chars[end - 1])) {
+            --end;
+        }
+        while (start < end && Punctuation.isPunctuation(chars[start])) {
+            ++start;
+        }
+        if (start < end && filter.accepts(chars, start, end)) {
+            sink.accept(chars, start, end);
+        }
+    }
+
     /**
      * @param files       text files to process
      * @param wordCounter target WordCounter to add word occurrences from text files of 1st arg
      */
     static void countWordsInFiles(final List<File> files, final WordCounter wordCounter) {
+        countWordsInFiles(files, TokenFilter.NONE, wordCounter);
+    }
+
+    /**
+     * @param files       text files to process
+     * @param filter      tokens it rejects are not counted
+     * @param wordCounter target WordCounter to add word occurrences from text files of 1st arg
+     */
+    static void countWordsInFiles(final List<File> files, final TokenFilter filter, final WordCounter wordCounter) {
+        countWordsInFiles(files, filter, false, wordCounter);
+    }
+
+    /**
+     * @param files       text files to process
+     * @param filter      tokens it rejects are not counted
+     * @param hotWords    whether to count through the calling thread's HotWordCache, flushed into the word counter
+     *                    at the end
+     * @param wordCounter target WordCounter to add word occurrences from text files of 1st arg
+     */
+    static void countWordsInFiles(final List<File> files, final TokenFilter filter, final boolean hotWords,
+                                  final WordCounter wordCounter) {
+        countWordsInFiles(files, null, filter, hotWords, wordCounter);
+    }
+
+    /**
+     * @param files          text files to process
+     * @param multiplicities number of times each file is counted, aligned with files, or null for once each;
+     *                       a file counted more than once is counted into a counter of its own, added multiplied
+     * @param filter         tokens it rejects are not counted
+     * @param hotWords       whether to count through the calling thread's HotWordCache, flushed into the word counter
+     *                       at the end
+     * @param wordCounter    target WordCounter to add word occurrences from text files of 1st arg
+     */
+    static void countWordsInFiles(final List<File> files, final int[] multiplicities, final TokenFilter filter,
+                                  final boolean hotWords, final WordCounter wordCounter) {
+        checkArgument(multiplicities == null || multiplicities.length == files.size());
         final Instant before = Instant.now();
+        final char[] buffer = new char[CHUNK_SIZE];   // reused for all files of the batch
+        final HotWordCache cache = hotWords ? hotWordCache.get().attach(wordCounter) : null;
+        final TokenSink sink = cache != null ? cache::countToken
+                : (chars, start, end) -> wordCounter.countWord(new String(chars, start, end - start).toLowerCase());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final int multiplicity = multiplicities == null ? 1 : multiplicities[i];
+                try {
+                    // we have an opportunity here to extract text from compressed formats, epub etc.
+                    final FileReader reader = new FileReader(files.get(i));
+                    if (multiplicity == 1) {
+                        tokenize(reader, buffer, filter, sink);
+                    } else {
+                        final WordCounter once = new WordCounter();
+                        tokenize(reader, buffer, filter,
+                                (chars, start, end) -> once.countWord(new String(chars, start, end - start).toLowerCase()));
+                        wordCounter.addCounts(once, multiplicity);
+                    }
+                } catch (IOException e) {
+                    log.log(Level.SEVERE, e.getMessage());
+                }
+            }
+        } finally {
+            if (cache != null) {
+                cache.flush();
+            }
+        }
+        wordCounter.updateBatchStats(files.size(), Duration.between(before, Instant.now()).toMillis());
+    }
+
+    /**
+     * @param files     text files to process
+     * @param idCounter target IdWordCounter to add word occurrences from text files of 1st arg
+     */
+    static void countWordsInFiles(final List<File> files, final IdWordCounter idCounter) {
+        final char[] buffer = new char[CHUNK_SIZE];
         for (final File file : files) {
             try {
-                // we have an opportunity here to extract text from compressed formats, epub etc.
-                final FileReader reader = new FileReader(file);
-                countWordsFromReader(reader, wordCounter);
+                tokenize(new FileReader(file), buffer, idCounter::countWord);
+            } catch (IOException e) {
+                log.log(Level.SEVERE, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Count n-grams of a batch of files; n-grams do not span files
+     *
+     * @param files        text files to process
+     * @param nGramCounter target NGramCounter to add n-gram occurrences from text files of 1st arg
+     */
+    static void countNGramsInFiles(final List<File> files, final NGramCounter nGramCounter) {
+        final char[] buffer = new char[CHUNK_SIZE];
+        for (final File file : files) {
+            try {
+                tokenize(new FileReader(file), buffer, nGramCounter.newSequence());
             } catch (IOException e) {
                 log.log(Level.SEVERE, e.getMessage());
             }
         }
-        wordCounter.updateBatchStats(files.size(), Duration.between(before, Instant.now()).toMillis());
     }
 
     /**
@@ -0,0 +1,217 @@
+package com.jacek.wordcount;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Read-only, memory-mapped index of word counts frozen from a WordCounter
+ * <p>
+ * Lookups work directly on the mapped file without deserialization, so many processes
+ * opening the same index file share a single page cache copy of it
+ * <p>
+ * File layout (big endian):
+ * <pre>
+ *   int magic, int version, int size
+ *   int[size + 1] key offsets (relative to the start of key bytes, the last one is the end of keys)
+ *   long[size]    counts
+ *   byte[]        UTF-8 encoded keys, concatenated in ascending unsigned byte order
+ * </pre>
+ * Unsigned byte order of UTF-8 is the code point order of words,
+ * which is what prefix enumeration and range scans follow
+ * <p>
+ * Immutable and thread safe
+ */
+public final class CountIndex {
+    private static final int MAGIC = 0x57434958;   // "WCIX"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+    private static final Comparator<byte[]> KEY_ORDER = UnsignedBytes.lexicographicalComparator();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int countsStart;
+    private final int keysStart;
+
+    private CountIndex(final ByteBuffer buffer) {
+        checkArgument(buffer.getInt(0) == MAGIC, "not a word count index");
+        checkArgument(buffer.getInt(4) == VERSION, "unsupported index version %s", buffer.getInt(4));
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.countsStart = HEADER_SIZE + 4 * (size + 1);
+        this.keysStart = countsStart + 8 * size;
+    }
+
+    /**
+     * Freeze the current contents of a word counter into an index file
+     *
+     * @param wordCounter counts to write; must not be modified while this runs
+     * @param path        index file to create or overwrite
+     * @throws IOException
+     */
+    public static void write(final WordCounter wordCounter, final Path path) throws IOException {
+        final Entry[] entries = wordCounter.getParallelWordCountStream()
+                .map(wc -> new Entry(wc.getWord().getBytes(StandardCharsets.UTF_8), wc.getCount()))
+                .toArray(Entry[]::new);
+        Arrays.parallelSort(entries, (e1, e2) -> KEY_ORDER.compare(e1.key, e2.key));
+        try (final OutputStream os = Files.newOutputStream(path);
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.length);
+            int offset = 0;
+            for (final Entry entry : entries) {
+                out.writeInt(offset);
+                offset += entry.key.length;
+            }
+            out.writeInt(offset);
+            for (final Entry entry : entries) {
+                out.writeLong(entry.count);
+            }
+            for (final Entry entry : entries) {
+                out.write(entry.key);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] key;
+        private final long count;
+
+        Entry(final byte[] key, final long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Map an index file written by write into memory
+     *
+     * @param path index file
+     * @return index backed by a read-only mapping of the file
+     * @throws IOException
+     */
+    public static CountIndex open(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new CountIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return cardinality of unique words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param word non-null string
+     * @return number of times the argument was counted, 0 if not in the index
+     */
+    public long getCount(@NonNull final String word) {
+        final byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        final int i = lowerBound(key);
+        return i < size && compareKeyAt(i, key) == 0 ? countAt(i) : 0;
+    }
+
+    /**
+     * @param prefix non-null string; an empty prefix enumerates the whole index
+     * @return WordCounts of all words starting with prefix in ascending word order
+     */
+    public Stream<WordCounter.WordCount> withPrefix(@NonNull final String prefix) {
+        final byte[] from = prefix.getBytes(StandardCharsets.UTF_8);
+        return from.length == 0 ? entries(0, size) : entries(lowerBound(from), lowerBound(prefixSuccessor(from)));
+    }
+
+    /**
+     * @param fromInclusive lower bound of words
+     * @param toExclusive   upper bound of words
+     * @return WordCounts of all words w such that fromInclusive &lt;= w &lt; toExclusive in ascending word order
+     */
+    public Stream<WordCounter.WordCount> range(@NonNull final String fromInclusive, @NonNull final String toExclusive) {
+        final int from = lowerBound(fromInclusive.getBytes(StandardCharsets.UTF_8));
+        final int to = lowerBound(toExclusive.getBytes(StandardCharsets.UTF_8));
+        return entries(from, Math.max(from, to));
+    }
+
+    private Stream<WordCounter.WordCount> entries(final int from, final int to) {
+        return IntStream.range(from, to).mapToObj(i -> new WordCounter.WordCount(wordAt(i), countAt(i)));
+    }
+
+    /**
+     * UTF-8 never contains 0xFF bytes, so incrementing the last byte gives the smallest key
+     * greater than all keys starting with the prefix
+     */
+    private static byte[] prefixSuccessor(final byte[] prefix) {
+        final byte[] successor = prefix.clone();
+        ++successor[successor.length - 1];
+        return successor;
+    }
+
+    /**
+     * @return index of the first key not less than the argument, or size if there is none
+     */
+    private int lowerBound(final byte[] key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (compareKeyAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Compare i-th key with the argument in unsigned byte order without copying key bytes out of the mapping
+     */
+    private int compareKeyAt(final int i, final byte[] key) {
+        final int start = keyOffsetAt(i);
+        final int length = keyOffsetAt(i + 1) - start;
+        final int n = Math.min(length, key.length);
+        for (int j = 0; j < n; j++) {
+            final int delta = UnsignedBytes.compare(buffer.get(start + j), key[j]);
+            if (delta != 0) {
+                return delta;
+            }
+        }
+        return length - key.length;
+    }
+
+    private int keyOffsetAt(final int i) {
+        return keysStart + buffer.getInt(HEADER_SIZE + 4 * i);
+    }
+
+    private long countAt(final int i) {
+        return buffer.getLong(countsStart + 8 * i);
+    }
+
+    private String wordAt(final int i) {
+        final int start = keyOffsetAt(i);
+        final byte[] bytes = new byte[keyOffsetAt(i + 1) - start];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = buffer.get(start + j);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
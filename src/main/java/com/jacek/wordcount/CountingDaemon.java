@@ -0,0 +1,355 @@
+package com.jacek.wordcount;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Long running counting service keeping a WordCounter per file in memory, to answer repeated requests
+ * for overlapping sets of files by merging cached counts and counting only the files not cached
+ * <p>
+ * A cached entry is valid while its file's modification time and size are unchanged.
+ * Entries are evicted least recently used first when their estimated memory exceeds the budget.
+ * Two concurrent requests missing the same file both count it
+ * <p>
+ * Requests are served on a loopback TCP port, one request per line, fields separated by tabs.
+ * Other local users may connect to the port too, so a connection must first present a secret token,
+ * read from a file only its owner can read or write:
+ * <pre>
+ *   AUTH &lt;token&gt;           answers OK, or ERR and closes the connection
+ *   COUNT &lt;k&gt; &lt;path&gt;...   files, or directories standing for all regular files under them;
+ *                          answers OK, files, hits, misses, total count, unique words,
+ *                          then the k most frequent words (0 for all) as word and count lines
+ *   STATS                  answers OK, hits, misses, hit ratio, cached files, cache bytes, budget bytes
+ * </pre>
+ * Every answer ends with an empty line; failures answer ERR and a one line message
+ */
+final class CountingDaemon implements Closeable {
+    private static final Logger log = Logger.getLogger(CountingDaemon.class.getName());
+    // on top of the counter: map entry, path, attributes
+    private static final long ENTRY_OVERHEAD_BYTES = 256L;
+    private static final int MAX_ERROR_LENGTH = 200;
+
+    private final long budgetBytes;
+    // guarded by this; in access order for LRU eviction
+    private final LinkedHashMap<Path, CachedCount> cache = new LinkedHashMap<>(1024, 0.75f, true);
+    private long cacheBytes = 0L;
+    private long hits = 0L;
+    private long misses = 0L;
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+    private byte[] token;
+
+    private static final class CachedCount {
+        private final long lastModifiedMillis;
+        private final long size;
+        private final WordCounter wordCounter;
+        private final long bytes;
+
+        CachedCount(final long lastModifiedMillis, final long size, final WordCounter wordCounter) {
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.size = size;
+            this.wordCounter = wordCounter;
+            this.bytes = wordCounter.estimatedMemory() + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    /**
+     * Counts of one request, with how many of its files were cached
+     */
+    static final class Result {
+        final WordCounter wordCounter;
+        final int files;
+        final int hits;
+
+        Result(final WordCounter wordCounter, final int files, final int hits) {
+            this.wordCounter = wordCounter;
+            this.files = files;
+            this.hits = hits;
+        }
+    }
+
+    /**
+     * @param budgetBytes estimated memory the cached counters may use
+     */
+    CountingDaemon(final long budgetBytes) {
+        checkArgument(budgetBytes > 0);
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param paths files, or directories standing for all regular files under them
+     * @return merged counts of the files; cached counters are copied, never shared with the result
+     * @throws IOException if a path cannot be listed
+     */
+    Result count(final List<Path> paths) throws IOException {
+        final Set<Path> files = new LinkedHashSet<>();
+        for (final Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (final Stream<Path> tree = Files.walk(path)) {
+                    tree.filter(Files::isRegularFile).forEach(file -> files.add(file.toAbsolutePath().normalize()));
+                }
+            } else {
+                files.add(path.toAbsolutePath().normalize());
+            }
+        }
+        final WordCounter wordCounter = new WordCounter();
+        final List<Path> missed = new ArrayList<>();
+        final List<BasicFileAttributes> missedAttributes = new ArrayList<>();
+        int hitCount = 0;
+        for (final Path file : files) {
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                log.log(Level.WARNING, e.getMessage());
+                continue;
+            }
+            final CachedCount cached = lookup(file, attributes);
+            if (cached != null) {
+                wordCounter.addCounts(cached.wordCounter, 1);
+                ++hitCount;
+            } else {
+                missed.add(file);
+                missedAttributes.add(attributes);
+            }
+        }
+        // misses are counted file by file, in parallel, so that each can be cached on its own
+        final List<WordCounter> counted = missed.parallelStream()
+                .map(file -> {
+                    final WordCounter fileCounter = new WordCounter();
+                    Core.countWordsInFiles(Collections.singletonList(file.toFile()), fileCounter);
+                    return fileCounter;
+                })
+                .collect(Collectors.toList());
+        for (int i = 0; i < missed.size(); i++) {
+            wordCounter.addCounts(counted.get(i), 1);
+            store(missed.get(i), missedAttributes.get(i), counted.get(i));
+        }
+        synchronized (this) {
+            hits += hitCount;
+            misses += missed.size();
+        }
+        return new Result(wordCounter, hitCount + missed.size(), hitCount);
+    }
+
+    private synchronized CachedCount lookup(final Path file, final BasicFileAttributes attributes) {
+        final CachedCount cached = cache.get(file);
+        if (cached == null) {
+            return null;
+        } else if (cached.lastModifiedMillis == attributes.lastModifiedTime().toMillis()
+                && cached.size == attributes.size()) {
+            return cached;
+        } else {
+            cache.remove(file);
+            cacheBytes -= cached.bytes;
+            return null;
+        }
+    }
+
+    private synchronized void store(final Path file, final BasicFileAttributes attributes, final WordCounter wordCounter) {
+        final CachedCount entry = new CachedCount(attributes.lastModifiedTime().toMillis(), attributes.size(), wordCounter);
+        if (entry.bytes > budgetBytes) {
+            return;
+        }
+        final CachedCount previous = cache.put(file, entry);
+        cacheBytes += entry.bytes - (previous != null ? previous.bytes : 0L);
+        for (final Iterator<CachedCount> it = cache.values().iterator(); cacheBytes > budgetBytes && it.hasNext(); ) {
+            cacheBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int getCachedFiles() {
+        return cache.size();
+    }
+
+    synchronized long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    private synchronized String stats() {
+        final long requests = hits + misses;
+        return String.format("OK\t%d\t%d\t%.3f\t%d\t%d\t%d", hits, misses,
+                requests > 0 ? (double) hits / requests : 0.0, cache.size(), cacheBytes, budgetBytes);
+    }
+
+    /**
+     * @param tokenFile file holding the token on its first line, readable and writable by its owner only
+     * @return the token
+     * @throws IOException
+     * @throws IllegalArgumentException if the file is empty, or group or others have any permission on it
+     */
+    static String readToken(final Path tokenFile) throws IOException {
+        final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(tokenFile);
+        checkArgument(permissions.stream().allMatch(p -> p == PosixFilePermission.OWNER_READ
+                        || p == PosixFilePermission.OWNER_WRITE),
+                "%s must be readable by its owner only (chmod 600), but was %s", tokenFile,
+                PosixFilePermissions.toString(permissions));
+        final List<String> lines = Files.readAllLines(tokenFile, StandardCharsets.UTF_8);
+        checkArgument(!lines.isEmpty() && !lines.get(0).trim().isEmpty(), "no token in %s", tokenFile);
+        return lines.get(0).trim();
+    }
+
+    /**
+     * Start serving requests on a background thread
+     *
+     * @param port      loopback port to listen on, 0 for any free port
+     * @param tokenFile file holding the token connections must present, as checked by readToken
+     * @return port listened on
+     * @throws IOException
+     */
+    int start(final int port, final Path tokenFile) throws IOException {
+        token = readToken(tokenFile).getBytes(StandardCharsets.UTF_8);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "counting-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connections.execute(this::accept);
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        try {
+            while (!serverSocket.isClosed()) {
+                final Socket socket = serverSocket.accept();
+                connections.execute(() -> serve(socket));
+            }
+        } catch (SocketException e) {
+            // closed
+        } catch (IOException e) {
+            log.log(Level.SEVERE, e.getMessage());
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try (final Socket s = socket;
+             final BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             final Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            if (!authenticate(in.readLine())) {
+                out.write("ERR\tunauthorized\n\n");
+                return;
+            }
+            out.write("OK\n\n");
+            out.flush();
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    answer(line.split("\t"), out);
+                } catch (IOException | RuntimeException e) {
+                    log.log(Level.WARNING, "request failed: " + line, e);
+                    out.write("ERR\t" + errorMessage(e) + "\n");
+                }
+                out.write("\n");
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, e.getMessage());
+        }
+    }
+
+    /**
+     * @param line first line of a connection
+     * @return whether it presents the token, compared in time independent of where they differ
+     */
+    private boolean authenticate(final String line) {
+        return line != null && line.startsWith("AUTH\t")
+                && MessageDigest.isEqual(line.substring(5).getBytes(StandardCharsets.UTF_8), token);
+    }
+
+    /**
+     * @return the exception's type and message, without stack trace, control characters or line breaks, shortened
+     */
+    static String errorMessage(final Exception e) {
+        final String message = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+        final String line = message.replaceAll("\\p{Cntrl}", " ");
+        return line.length() > MAX_ERROR_LENGTH ? line.substring(0, MAX_ERROR_LENGTH) + "..." : line;
+    }
+
+    private void answer(final String[] request, final Writer out) throws IOException {
+        if (request[0].equals("STATS")) {
+            out.write(stats() + "\n");
+        } else if (request[0].equals("COUNT") && request.length >= 2) {
+            final int k = Integer.parseInt(request[1]);
+            final List<Path> paths = Arrays.stream(request, 2, request.length).map(Paths::get).collect(Collectors.toList());
+            final Result result = count(paths);
+            final WordCounter wordCounter = result.wordCounter;
+            out.write(String.format("OK\t%d\t%d\t%d\t%d\t%d\n", result.files, result.hits, result.files - result.hits,
+                    wordCounter.getTotalCount(), wordCounter.size()));
+            for (final WordCounter.WordCount wordCount : wordCounter.topWords(k > 0 ? k : wordCounter.size())) {
+                out.write(wordCount.getWord() + "\t" + wordCount.getCount() + "\n");
+            }
+        } else {
+            out.write("ERR\tunknown request " + request[0] + "\n");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+            connections.shutdownNow();
+        }
+    }
+
+    /**
+     * @param args loopback port, token file (chmod 600), and optionally the cache budget in MB (default 1024)
+     */
+    public static void main(String[] args) {
+        checkArgument(args.length >= 2, "arguments expected: port token-file [cache budget MB]");
+        final long budgetMB = args.length > 2 ? Long.parseLong(args[2]) : 1024L;
+        try {
+            final CountingDaemon daemon = new CountingDaemon(budgetMB << 20);
+            System.out.println("listening on port " + daemon.start(Integer.parseInt(args[0]), Paths.get(args[1])));
+            // serve until killed
+            final Object forever = new Object();
+            synchronized (forever) {
+                forever.wait();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.jacek.wordcount;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Counts every distinct file content once, then adds its counts with the multiplicity of the content
+ * <p>
+ * Files are grouped by size first, as a file of unique size cannot have a duplicate.
+ * Within a group of equal sizes a hash of a few sampled blocks separates most different files cheaply,
+ * and only files still colliding get a hash of their full content (128 bit murmur3)
+ * <p>
+ * Unique files are counted by a delegate service, in a single run, weighted by their multiplicities
+ */
+final class DeduplicatingWordCounting implements WordCountingService {
+    private static final Logger log = Logger.getLogger(DeduplicatingWordCounting.class.getName());
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int SAMPLE_SIZE = 4096;
+
+    private final WordCountingService delegate;
+    private volatile long skippedFiles = 0L;
+    private volatile long skippedBytes = 0L;
+
+    DeduplicatingWordCounting(final WordCountingService delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return number of duplicate files not counted in the last run
+     */
+    long getSkippedFiles() {
+        return skippedFiles;
+    }
+
+    /**
+     * @return number of bytes of duplicate files not counted in the last run
+     */
+    long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    @Override
+    public WordCounter countWords(final List<File> files) throws Exception {
+        final Map<File, Integer> unique = uniqueContents(files);
+        final List<File> uniqueFiles = new ArrayList<>(unique.size());
+        final int[] multiplicities = new int[unique.size()];
+        long skipped = 0L;
+        long bytes = 0L;
+        for (final Map.Entry<File, Integer> entry : unique.entrySet()) {
+            multiplicities[uniqueFiles.size()] = entry.getValue();
+            uniqueFiles.add(entry.getKey());
+            skipped += entry.getValue() - 1;
+            bytes += (entry.getValue() - 1) * entry.getKey().length();
+        }
+        skippedFiles = skipped;
+        skippedBytes = bytes;
+        log.info(String.format("%d duplicate files, %d bytes skipped", skipped, bytes));
+        return delegate.countWords(uniqueFiles, multiplicities);
+    }
+
+    /**
+     * @param files files possibly with duplicate contents, and even duplicate paths
+     * @return a representative of every distinct content mapped to the number of files with that content
+     */
+    static Map<File, Integer> uniqueContents(final List<File> files) {
+        final Map<Long, List<File>> bySize = files.parallelStream().collect(Collectors.groupingBy(File::length));
+        final Map<File, Integer> multiplicities = new HashMap<>();
+        for (final List<File> sameSize : bySize.values()) {
+            if (sameSize.size() == 1) {
+                multiplicities.put(sameSize.get(0), 1);
+            } else {
+                for (final List<File> sameSample : groupBy(sameSize, DeduplicatingWordCounting::sampleHash)) {
+                    if (sameSample.size() == 1) {
+                        multiplicities.put(sameSample.get(0), 1);
+                    } else {
+                        for (final List<File> sameContent : groupBy(sameSample, DeduplicatingWordCounting::fullHash)) {
+                            multiplicities.put(sameContent.get(0), sameContent.size());
+                        }
+                    }
+                }
+            }
+        }
+        return multiplicities;
+    }
+
+    /**
+     * Files that could not be hashed are put in groups of their own
+     */
+    private static List<List<File>> groupBy(final List<File> files, final Function<File, HashCode> hash) {
+        // hashes computed in parallel, aligned with files
+        final List<Optional<HashCode>> hashCodes = files.parallelStream()
+                .map(file -> {
+                    try {
+                        return Optional.of(hash.apply(file));
+                    } catch (UncheckedIOException e) {
+                        log.log(Level.WARNING, e.getMessage());
+                        return Optional.<HashCode>empty();
+                    }
+                })
+                .collect(Collectors.toList());
+        final List<List<File>> groups = new ArrayList<>();
+        final Map<HashCode, List<File>> byHash = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (hashCodes.get(i).isPresent()) {
+                byHash.computeIfAbsent(hashCodes.get(i).get(), h -> new ArrayList<>()).add(files.get(i));
+            } else {
+                groups.add(Collections.singletonList(files.get(i)));
+            }
+        }
+        groups.addAll(byHash.values());
+        return groups;
+    }
+
+    private static HashCode fullHash(final File file) {
+        try {
+            return Files.asByteSource(file).hash(HASH_FUNCTION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return hash of the first, middle and last SAMPLE_SIZE bytes of a file
+     */
+    private static HashCode sampleHash(final File file) {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long length = raf.length();
+            final Hasher hasher = HASH_FUNCTION.newHasher();
+            final byte[] bytes = new byte[SAMPLE_SIZE];
+            for (final long position : new long[]{0L, length / 2, Math.max(0L, length - SAMPLE_SIZE)}) {
+                raf.seek(position);
+                final int n = raf.read(bytes);
+                if (n > 0) {
+                    hasher.putBytes(bytes, 0, n);
+                }
+            }
+            return hasher.hash();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Variant of ForkJoinWordCounting in which all tasks share a concurrent WordDictionary
+ * and count into IdWordCounters: hash tables of the counts of the word ids a task has seen.
+ * Each word String is stored once instead of once per task, and merges add the smaller counter's ids into
+ * the larger counter, without hashing Strings.
+ * The merged counts are converted into a WordCounter once, at the end
+ * <p>
+ * The result reports the cumulative time of leaves as batch time, and of id counter merges and the final
+ * conversion, which is serial, as merge time
+ */
+final class DictionaryWordCounting implements WordCountingService {
+    private final int singleTaskMaxSize;
+    private final int parallelism;
+
+    DictionaryWordCounting(final int singleTaskMaxSize) {
+        this(singleTaskMaxSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param singleTaskMaxSize max number of files of a leaf task
+     * @param parallelism       number of worker threads of the pool
+     */
+    DictionaryWordCounting(final int singleTaskMaxSize, final int parallelism) {
+        checkArgument(singleTaskMaxSize > 0);
+        checkArgument(parallelism > 0);
+        this.singleTaskMaxSize = singleTaskMaxSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Performance data of a run, shared by its tasks
+     */
+    private static final class RunStats {
+        private final AtomicLong batchNanos = new AtomicLong();
+        private final AtomicInteger mergeCount = new AtomicInteger();
+        private final AtomicLong mergeNanos = new AtomicLong();
+    }
+
+    private final class CountingTask extends RecursiveTask<IdWordCounter> {
+        private final List<File> files;
+        private final WordDictionary dictionary;
+        private final RunStats stats;
+
+        CountingTask(final List<File> files, final WordDictionary dictionary, final RunStats stats) {
+            this.files = new ArrayList<>(files);
+            this.dictionary = dictionary;
+            this.stats = stats;
+        }
+
+        @Override
+        protected IdWordCounter compute() {
+            final int taskSize = files.size();
+            if (taskSize <= singleTaskMaxSize) {
+                final long before = System.nanoTime();
+                final IdWordCounter idCounter = new IdWordCounter(dictionary);
+                Core.countWordsInFiles(files, idCounter);
+                stats.batchNanos.addAndGet(System.nanoTime() - before);
+                return idCounter;
+            } else {
+                final int halfSize = taskSize / 2;
+                final CountingTask subtask1 = new CountingTask(files.subList(0, halfSize), dictionary, stats);
+                final CountingTask subtask2 = new CountingTask(files.subList(halfSize, taskSize), dictionary, stats);
+                subtask1.fork();
+                final IdWordCounter idCounter2 = subtask2.compute();
+                final IdWordCounter idCounter1 = subtask1.join();
+                final long before = System.nanoTime();
+                // the larger counter absorbs the smaller one
+                final IdWordCounter merged = idCounter1.size() > idCounter2.size()
+                        ? idCounter1.mergeIn(idCounter2) : idCounter2.mergeIn(idCounter1);
+                stats.mergeNanos.addAndGet(System.nanoTime() - before);
+                stats.mergeCount.incrementAndGet();
+                return merged;
+            }
+        }
+    }
+
+    @Override
+    public WordCounter countWords(final List<File> files) {
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            // randomize file order for better balanced task tree
+            final List<File> filesCopy = new ArrayList<>(files);
+            Collections.shuffle(filesCopy);
+            final RunStats stats = new RunStats();
+            final IdWordCounter idCounter = forkJoinPool.invoke(
+                    new CountingTask(filesCopy, new WordDictionary(), stats));
+            final long before = System.nanoTime();
+            final WordCounter wordCounter = idCounter.addTo(new WordCounter());
+            final long conversionNanos = System.nanoTime() - before;
+            wordCounter.updateBatchStats(files.size(), stats.batchNanos.get() / 1_000_000);
+            wordCounter.updateMergeStats(stats.mergeCount.get() + 1,
+                    (stats.mergeNanos.get() + conversionNanos) / 1_000_000);
+            return wordCounter;
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.jacek.wordcount;
+
+import com.google.common.io.ByteStreams;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keeps word counts of files in a directory tree (with names ending in an extension) up to date
+ * while files are appended to, created, rotated and removed
+ * <p>
+ * Files are assumed to be append only: of a grown file only the appended bytes are tokenized.
+ * A file that shrank or was replaced (different file key) is counted anew.
+ * Removed files have their counts subtracted, so counts are also kept per file.
+ * The unterminated last token of a file is counted provisionally, and re-read when the file grows.
+ * <p>
+ * Changes are picked up by a background thread from a WatchService or, if the file system does not support one,
+ * by rescanning the tree periodically. Queries can be made at any moment, from any thread
+ */
+final class DirectoryWatcher implements Closeable {
+    private static final Logger log = Logger.getLogger(DirectoryWatcher.class.getName());
+    private static final Charset CHARSET = Charset.defaultCharset();    // as used by FileReader
+    private static final int TAIL_SCAN_SIZE = 8192;
+
+    private final Path root;
+    private final String extension;
+    private final Duration pollInterval;
+    // guarded by itself
+    private final WordCounter total = new WordCounter();
+    private final Map<Path, FileState> fileStates = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * Counts contributed by a single file
+     */
+    private static final class FileState {
+        private final Object fileKey;
+        private long size = 0L;
+        // end of the last delimiter seen, where tokenization resumes
+        private long offset = 0L;
+        private final WordCounter counter = new WordCounter();
+        // provisional count of the unterminated token at the end of file
+        private WordCounter tail = new WordCounter();
+
+        FileState(final Object fileKey) {
+            this.fileKey = fileKey;
+        }
+    }
+
+    /**
+     * @param dirName      root of the directory tree to watch
+     * @param extension    file extension, eg. .log, of files to count
+     * @param pollInterval rescan interval used when there is no WatchService
+     */
+    DirectoryWatcher(final String dirName, final String extension, final Duration pollInterval) {
+        checkArgument(!pollInterval.isNegative() && !pollInterval.isZero());
+        this.root = Paths.get(dirName);
+        this.extension = extension;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Count all files present in the tree, then start a background thread following changes
+     *
+     * @throws IOException
+     */
+    void start() throws IOException {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(root);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.log(Level.WARNING, "no WatchService, falling back to polling: " + e.getMessage());
+            watchService = null;
+        }
+        rescan();
+        thread = new Thread(watchService != null ? this::watch : this::poll, "word-count-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void registerTree(final Path dir) throws IOException {
+        try (final Stream<Path> paths = Files.walk(dir)) {
+            for (final Path path : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+                watchedDirs.put(path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (!closed) {
+                final WatchKey key = watchService.take();
+                final Path dir = watchedDirs.get(key);
+                synchronized (this) {
+                    processEvents(key, dir);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void processEvents(final WatchKey key, final Path dir) {
+        try {
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || dir == null) {
+                    rescan();
+                } else {
+                    final Path path = dir.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                        registerTree(path);
+                        rescan(path);
+                    } else {
+                        update(path);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.SEVERE, e.getMessage());
+        }
+        if (!key.reset()) {     // directory is gone
+            watchedDirs.remove(key);
+            if (dir != null) {
+                removeUnder(dir);
+            }
+        }
+    }
+
+    private void poll() {
+        try {
+            while (!closed) {
+                Thread.sleep(pollInterval.toMillis());
+                rescan();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private boolean isCounted(final Path path) {
+        return path.getFileName().toString().endsWith(extension);
+    }
+
+    /**
+     * Bring counts up to date with all files of the tree; files are updated in parallel
+     */
+    void rescan() {
+        rescan(root);
+    }
+
+    private synchronized void rescan(final Path dir) {
+        final Set<Path> present = new HashSet<>();
+        try (final Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(path -> isCounted(path) && Files.isRegularFile(path)).forEach(present::add);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, e.getMessage());
+        }
+        present.parallelStream().forEach(this::update);
+        for (final Path path : new ArrayList<>(fileStates.keySet())) {
+            if (path.startsWith(dir) && !present.contains(path)) {
+                remove(path);
+            }
+        }
+    }
+
+    private void removeUnder(final Path dir) {
+        for (final Path path : new ArrayList<>(fileStates.keySet())) {
+            if (path.startsWith(dir)) {
+                remove(path);
+            }
+        }
+    }
+
+    private void remove(final Path path) {
+        final FileState state = fileStates.remove(path);
+        if (state != null) {
+            synchronized (total) {
+                total.addCounts(state.counter, -1);
+            }
+        }
+    }
+
+    /**
+     * Count what was appended to a file since the last update, or count it anew if it was replaced,
+     * or subtract its counts if it no longer exists
+     */
+    private void update(final Path path) {
+        if (!isCounted(path)) {
+            return;
+        }
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            remove(path);
+            return;
+        } catch (IOException e) {
+            log.log(Level.SEVERE, e.getMessage());
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            return;
+        }
+        final long size = attributes.size();
+        FileState state = fileStates.get(path);
+        if (state != null && (size < state.size || !Objects.equals(attributes.fileKey(), state.fileKey))) {
+            remove(path);
+            state = null;
+        } else if (state != null && size == state.size) {
+            return;
+        }
+        if (state == null) {
+            state = new FileState(attributes.fileKey());
+            fileStates.put(path, state);
+        }
+        final WordCounter delta = new WordCounter();
+        final WordCounter tail = new WordCounter();
+        final long offset;
+        try {
+            offset = countRange(path, state.offset, size, delta, tail);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, e.getMessage());
+            return;
+        }
+        synchronized (total) {
+            state.counter.addCounts(state.tail, -1).addCounts(delta, 1).addCounts(tail, 1);
+            total.addCounts(state.tail, -1).addCounts(delta, 1).addCounts(tail, 1);
+        }
+        state.tail = tail;
+        state.offset = offset;
+        state.size = size;
+    }
+
+    /**
+     * Tokenize bytes [from, to) of a file: complete tokens up to the last delimiter, and the remaining tail separately
+     *
+     * @return position after the last delimiter, where tokenization will resume
+     */
+    private static long countRange(final Path path, final long from, final long to,
+                                   final WordCounter complete, final WordCounter tail) throws IOException {
+        final long end = endOfLastDelimiter(path, from, to);
+        final char[] buffer = new char[Core.CHUNK_SIZE];
+        if (end > from) {
+            Core.countWordsFromReader(rangeReader(path, from, end), buffer, complete);
+        }
+        if (to > end) {
+            Core.countWordsFromReader(rangeReader(path, end, to), buffer, tail);
+        }
+        return end;
+    }
+
+    private static Reader rangeReader(final Path path, final long from, final long to) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ).position(from);
+        return new InputStreamReader(ByteStreams.limit(Channels.newInputStream(channel), to - from), CHARSET);
+    }
+
+    /**
+     * White space delimiters are single byte characters in UTF-8 and single byte charsets
+     * so files can be split at them without decoding
+     *
+     * @return position after the last delimiter byte in [from, to), or from if there is none
+     */
+    private static long endOfLastDelimiter(final Path path, final long from, final long to) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(TAIL_SCAN_SIZE);
+            for (long blockEnd = to; blockEnd > from; ) {
+                final long blockStart = Math.max(from, blockEnd - TAIL_SCAN_SIZE);
+                buffer.clear().limit((int) (blockEnd - blockStart));
+                while (buffer.hasRemaining() && channel.read(buffer, blockStart + buffer.position()) >= 0) {
+                    // keep reading
+                }
+                for (int i = buffer.position(); --i >= 0; ) {
+                    final byte b = buffer.get(i);
+                    if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+                        return blockStart + i + 1;
+                    }
+                }
+                blockEnd = blockStart;
+            }
+            return from;
+        }
+    }
+
+    /**
+     * @return cardinality of unique words in the files currently in the tree
+     */
+    int size() {
+        synchronized (total) {
+            return total.size();
+        }
+    }
+
+    /**
+     * @param word non-null string
+     * @return current count of the word
+     */
+    long getCount(@NonNull final String word) {
+        synchronized (total) {
+            return total.getCount(word);
+        }
+    }
+
+    long getTotalCount() {
+        synchronized (total) {
+            return total.getTotalCount();
+        }
+    }
+
+    /**
+     * @param k nonnegative number of words of highest frequency
+     * @return current top k words in order of nonincreasing frequency
+     */
+    List<WordCounter.WordCount> topWords(final int k) {
+        synchronized (total) {
+            return total.topWords(k);
+        }
+    }
+
+    /**
+     * @return number of files currently counted
+     */
+    int fileCount() {
+        return fileStates.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @param args 2 or 3 args: root dir for text files, file extension, optionally seconds between reports
+     */
+    public static void main(String[] args) {
+        checkArgument(args.length == 2 || args.length == 3, "arguments expected: directory, file extension [, seconds]");
+        final Duration interval = Duration.ofSeconds(args.length == 3 ? Long.parseLong(args[2]) : 10);
+        try (final DirectoryWatcher watcher = new DirectoryWatcher(args[0], args[1], interval)) {
+            watcher.start();
+            while (true) {
+                System.out.println("files = " + watcher.fileCount() + ", token count = " + watcher.size());
+                System.out.println("top 20 = " + watcher.topWords(20));
+                Thread.sleep(interval.toMillis());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
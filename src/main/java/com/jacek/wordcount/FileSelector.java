@@ -0,0 +1,205 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Selects the files to count under a directory by glob patterns and size, and rejects binary files
+ * before they reach a counting pool, reporting the files and bytes skipped for each reason
+ * <p>
+ * A pattern without a slash matches file and directory names, eg. *.c or build; one with a slash matches paths
+ * relative to the root, eg. drivers/**&#47;*.h. A directory matching an exclude pattern is not walked at all.
+ * Sizes come with the directory walk, so only files passing patterns and size limits are opened:
+ * their first few KB are sniffed, in parallel, for NUL bytes or too many control characters
+ */
+final class FileSelector {
+    private static final Logger log = Logger.getLogger(FileSelector.class.getName());
+    private static final int SNIFF_BYTES = 8192;
+    // more control characters than this fraction of the sniffed bytes make a file binary
+    private static final double MAX_CONTROL_RATIO = 0.3;
+
+    enum Reason {EXCLUDED, SIZE, BINARY}
+
+    /**
+     * Selected files in walk order, and what was skipped
+     */
+    static final class Selection {
+        final List<File> files;
+        private final int[] skippedFiles = new int[Reason.values().length];
+        private final long[] skippedBytes = new long[Reason.values().length];
+
+        Selection(final List<File> files) {
+            this.files = files;
+        }
+
+        private void skip(final Reason reason, final long bytes) {
+            ++skippedFiles[reason.ordinal()];
+            skippedBytes[reason.ordinal()] += bytes;
+        }
+
+        int getSkippedFiles(final Reason reason) {
+            return skippedFiles[reason.ordinal()];
+        }
+
+        long getSkippedBytes(final Reason reason) {
+            return skippedBytes[reason.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder().append(files.size()).append(" files selected");
+            for (final Reason reason : Reason.values()) {
+                sb.append(", ").append(getSkippedFiles(reason)).append(' ').append(reason.name().toLowerCase())
+                        .append(" (").append(getSkippedBytes(reason)).append(" bytes)");
+            }
+            return sb.toString();
+        }
+    }
+
+    private final List<PathMatcher> nameIncludes = new ArrayList<>();
+    private final List<PathMatcher> pathIncludes = new ArrayList<>();
+    private final List<PathMatcher> nameExcludes = new ArrayList<>();
+    private final List<PathMatcher> pathExcludes = new ArrayList<>();
+    private final long minSize;
+    private final long maxSize;
+    private final boolean skipBinary;
+
+    /**
+     * @param includes   glob patterns of files to select, all files if empty
+     * @param excludes   glob patterns of files and directories to skip
+     * @param minSize    smallest file size selected, in bytes
+     * @param maxSize    largest file size selected, in bytes
+     * @param skipBinary whether to sniff files and skip binary ones
+     */
+    FileSelector(final List<String> includes, final List<String> excludes, final long minSize, final long maxSize,
+                 final boolean skipBinary) {
+        checkArgument(minSize >= 0 && minSize <= maxSize);
+        final FileSystem fileSystem = FileSystems.getDefault();
+        for (final String include : includes) {
+            (include.contains("/") ? pathIncludes : nameIncludes).add(fileSystem.getPathMatcher("glob:" + include));
+        }
+        for (final String exclude : excludes) {
+            (exclude.contains("/") ? pathExcludes : nameExcludes).add(fileSystem.getPathMatcher("glob:" + exclude));
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.skipBinary = skipBinary;
+    }
+
+    private static boolean matches(final List<PathMatcher> nameMatchers, final List<PathMatcher> pathMatchers,
+                                   final Path relative) {
+        final Path name = relative.getFileName();
+        for (final PathMatcher matcher : nameMatchers) {
+            if (name != null && matcher.matches(name)) {
+                return true;
+            }
+        }
+        for (final PathMatcher matcher : pathMatchers) {
+            if (matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param root directory to walk; symbolic links are not followed
+     * @return selected regular files, and the files and bytes skipped; files under excluded directories
+     * are not walked, so not reported
+     * @throws IOException if the root cannot be walked
+     */
+    Selection select(final Path root) throws IOException {
+        final List<File> files = new ArrayList<>();
+        final Selection selection = new Selection(files);
+        final List<Path> candidates = new ArrayList<>();
+        final List<Long> candidateSizes = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) {
+                return !dir.equals(root) && matches(nameExcludes, pathExcludes, root.relativize(dir))
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                if (!attributes.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final Path relative = root.relativize(file);
+                final long size = attributes.size();
+                if ((!nameIncludes.isEmpty() || !pathIncludes.isEmpty()) && !matches(nameIncludes, pathIncludes, relative)
+                        || matches(nameExcludes, pathExcludes, relative)) {
+                    selection.skip(Reason.EXCLUDED, size);
+                } else if (size < minSize || size > maxSize) {
+                    selection.skip(Reason.SIZE, size);
+                } else {
+                    candidates.add(file);
+                    candidateSizes.add(size);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                log.log(Level.WARNING, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        final List<Boolean> binary = skipBinary
+                ? candidates.parallelStream().map(FileSelector::isBinary).collect(Collectors.toList())
+                : null;
+        for (int i = 0; i < candidates.size(); i++) {
+            if (binary != null && binary.get(i)) {
+                selection.skip(Reason.BINARY, candidateSizes.get(i));
+            } else {
+                files.add(candidates.get(i).toFile());
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * @return true if the first few KB of the file contain a NUL byte, or more than 30% control characters
+     * other than whitespace, backspace and escape; bytes above 127 count as text, as in UTF-8 or Latin-1.
+     * A file that cannot be read counts as binary
+     */
+    static boolean isBinary(final Path file) {
+        final byte[] bytes = new byte[SNIFF_BYTES];
+        int n = 0;
+        try (final InputStream in = Files.newInputStream(file)) {
+            for (int read; n < bytes.length && (read = in.read(bytes, n, bytes.length - n)) >= 0; ) {
+                n += read;
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, e.getMessage());
+            return true;
+        }
+        int control = 0;
+        for (int i = 0; i < n; i++) {
+            final byte b = bytes[i];
+            if (b == 0) {
+                return true;
+            } else if (b >= 0 && b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != '\b' && b != 0x1B
+                    || b == 0x7F) {
+                ++control;
+            }
+        }
+        return control > MAX_CONTROL_RATIO * n;
+    }
+}
@@ -0,0 +1,87 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * N-gram counterpart of ForkJoinWordCounting: files are counted in the leaves of a fork/join task tree
+ * into NGramCounters sharing one WordDictionary, and merged in its internal nodes;
+ * leaves are sized by a LeafSizing, like those of ForkJoinWordCounting
+ */
+final class ForkJoinNGramCounting {
+    private final int n;
+    private final LeafSizing leafSizing;
+
+    /**
+     * @param n                 number of words in an n-gram, 1 to 3
+     * @param singleTaskMaxSize max number of files counted directly by a single task, 0 for adaptive
+     */
+    ForkJoinNGramCounting(final int n, final int singleTaskMaxSize) {
+        checkArgument(n >= 1 && n <= 3);
+        this.n = n;
+        this.leafSizing = new LeafSizing(singleTaskMaxSize);
+    }
+
+    /**
+     * Counts the range [from, to) of shared arrays of files and their cumulative costs in bytes
+     */
+    private final class CountingTask extends RecursiveTask<NGramCounter> {
+        private final List<File> files;
+        private final long[] cumulativeBytes;
+        private final WordDictionary dictionary;
+        private final int from;
+        private final int to;
+
+        CountingTask(final List<File> files, final long[] cumulativeBytes, final WordDictionary dictionary,
+                     final int from, final int to) {
+            this.files = files;
+            this.cumulativeBytes = cumulativeBytes;
+            this.dictionary = dictionary;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected NGramCounter compute() {
+            if (leafSizing.isSmallEnough(cumulativeBytes, from, to)) {
+                final NGramCounter nGramCounter = new NGramCounter(dictionary, n);
+                final long before = System.nanoTime();
+                Core.countNGramsInFiles(files.subList(from, to), nGramCounter);
+                leafSizing.measured(cumulativeBytes, from, to, System.nanoTime() - before);
+                return nGramCounter;
+            } else {
+                final int split = leafSizing.splitIndex(cumulativeBytes, from, to);
+                final CountingTask subtask1 = new CountingTask(files, cumulativeBytes, dictionary, from, split);
+                final CountingTask subtask2 = new CountingTask(files, cumulativeBytes, dictionary, split, to);
+                subtask1.fork();
+                final NGramCounter nGramCounter2 = subtask2.compute();
+                final NGramCounter nGramCounter1 = subtask1.join();
+                return nGramCounter2.mergeIn(nGramCounter1);
+            }
+        }
+    }
+
+    /**
+     * @param files a batch of files to process (can be a singleton list)
+     * @return counts of unique n-grams; n-grams do not span files
+     */
+    NGramCounter countNGrams(final List<File> files) {
+        final ForkJoinPool forkJoinPool = new ForkJoinPool();
+        try {
+            // randomize file order for better balanced task tree
+            final List<File> filesCopy = new ArrayList<>(files);
+            Collections.shuffle(filesCopy);
+            final long[] cumulativeBytes = leafSizing.cumulativeBytes(filesCopy, forkJoinPool);
+            return forkJoinPool.invoke(
+                    new CountingTask(filesCopy, cumulativeBytes, new WordDictionary(), 0, filesCopy.size()));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+}
@@ -2,51 +2,144 @@ package com.jacek.wordcount;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * This class uses the ForkJoin framework to rationally divide work into smaller chunks
  * that can be executed concurrently.
+ * <p>
+ * Leaf task size is either fixed (singleTaskMaxSize files) or adaptive, as decided by a LeafSizing
+ * <p>
+ * With a MemoryBudget, leaves are admitted only while estimated memory of buffers and unmerged counters
+ * is under budget, and a counter completed while over budget is merged early into a single shared counter,
+ * where words common to many leaves are stored once, instead of waiting for its sibling
  */
 final class ForkJoinWordCounting implements WordCountingService {
-    // a parameter to experiment with:
-    // for lists of files of that size or smaller 
-    private final int singleTaskMaxSize;
+    private static final Logger log = Logger.getLogger(ForkJoinWordCounting.class.getName());
+    // char buffer of a leaf plus decoder buffers of its reader
+    private static final long LEAF_BUFFER_BYTES = 2L * Core.CHUNK_SIZE + 16384L;
 
+    // a parameter to experiment with: fixed or adaptive, with throughput measured over all leaves of this service
+    private final LeafSizing leafSizing;
+    private final int parallelism;
+    // null if unlimited
+    private final MemoryBudget memoryBudget;
+    private final TokenFilter tokenFilter;
+    private final boolean hotWords;
+
+    /**
+     * Self tuning granularity of leaf tasks
+     */
+    ForkJoinWordCounting() {
+        this(0, Runtime.getRuntime().availableProcessors(), null, TokenFilter.NONE, false);
+    }
+
+    /**
+     * @param singleTaskMaxSize max number of files of a leaf task, 0 for adaptive
+     */
     ForkJoinWordCounting(final int singleTaskMaxSize) {
-        checkArgument(singleTaskMaxSize > 0);
-        this.singleTaskMaxSize = singleTaskMaxSize;
+        this(singleTaskMaxSize, Runtime.getRuntime().availableProcessors(), null, TokenFilter.NONE, false);
+    }
+
+    /**
+     * @param singleTaskMaxSize max number of files of a leaf task, 0 for adaptive
+     * @param parallelism       number of worker threads of the pool
+     */
+    ForkJoinWordCounting(final int singleTaskMaxSize, final int parallelism) {
+        this(singleTaskMaxSize, parallelism, null, TokenFilter.NONE, false);
+    }
+
+    /**
+     * Self tuning granularity of leaf tasks, throttled by estimated memory
+     *
+     * @param memoryBudget budget shared by all runs of this service; its peak is reported after each run
+     */
+    ForkJoinWordCounting(final MemoryBudget memoryBudget) {
+        this(0, Runtime.getRuntime().availableProcessors(), memoryBudget, TokenFilter.NONE, false);
+    }
+
+    /**
+     * @param singleTaskMaxSize max number of files of a leaf task, 0 for adaptive
+     * @param parallelism       number of worker threads of the pool
+     * @param memoryBudget      budget throttling leaf tasks, or null if unlimited
+     * @param tokenFilter       tokens it rejects are not counted
+     * @param hotWords          whether leaves count through a HotWordCache per worker thread
+     */
+    ForkJoinWordCounting(final int singleTaskMaxSize, final int parallelism, final MemoryBudget memoryBudget,
+                         final TokenFilter tokenFilter, final boolean hotWords) {
+        checkArgument(parallelism > 0);
+        this.leafSizing = new LeafSizing(singleTaskMaxSize);
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+        this.tokenFilter = tokenFilter;
+        this.hotWords = hotWords;
+    }
+
+    /**
+     * @return measured nanoseconds per byte (including per file overhead) of leaf tasks, or the default estimate
+     */
+    double getNanosPerByte() {
+        return leafSizing.getNanosPerByte();
     }
 
     /**
      * A RecursiveTask implementation responsible for parallelization w/i the Fork/Join framework
      * It's compute method either performs smaller tasks directly
      * or schedules subtasks to be performed concurrently for their results to be merged when available
+     * <p>
+     * A task works on the range [from, to) of shared arrays of files, their multiplicities (or null if each is
+     * counted once) and their cumulative costs in bytes, and may merge its result early into a counter shared by all tasks of the run
      */
     private final class CountingTask extends RecursiveTask<WordCounter> {
         private final List<File> files;
+        private final int[] multiplicities;
+        private final long[] cumulativeBytes;
+        private final WordCounter early;
+        private final int from;
+        private final int to;
 
-        CountingTask(final List<File> files) {
-            this.files = new ArrayList<>(files);
+        CountingTask(final List<File> files, final int[] multiplicities, final long[] cumulativeBytes,
+                     final WordCounter early, final int from, final int to) {
+            this.files = files;
+            this.multiplicities = multiplicities;
+            this.cumulativeBytes = cumulativeBytes;
+            this.early = early;
+            this.from = from;
+            this.to = to;
         }
 
         @Override
         protected WordCounter compute() {
-            final int taskSize = files.size();
             // if small enough compute directly w/o splitting
-            if (taskSize <= singleTaskMaxSize) {
+            if (leafSizing.isSmallEnough(cumulativeBytes, from, to)) {
+                admit();
                 final WordCounter wordCounter = new WordCounter();
-                Core.countWordsInFiles(files, wordCounter);
-                return wordCounter;
+                final long before = System.nanoTime();
+                Core.countWordsInFiles(files.subList(from, to),
+                        multiplicities == null ? null : Arrays.copyOfRange(multiplicities, from, to),
+                        tokenFilter, hotWords, wordCounter);
+                leafSizing.measured(cumulativeBytes, from, to, System.nanoTime() - before);
+                if (memoryBudget == null) {
+                    return wordCounter;
+                } else {
+                    memoryBudget.allocate(wordCounter.estimatedMemory());
+                    memoryBudget.leafDone(LEAF_BUFFER_BYTES);
+                    return mergeEarlyIfOverBudget(wordCounter);
+                }
             } else {
-                final int halfSize = taskSize / 2;
-                final CountingTask subtask1 = new CountingTask(files.subList(0, halfSize));
-                final CountingTask subtask2 = new CountingTask(files.subList(halfSize, taskSize));
+                final int split = leafSizing.splitIndex(cumulativeBytes, from, to);
+                final CountingTask subtask1 = new CountingTask(files, multiplicities, cumulativeBytes, early, from, split);
+                final CountingTask subtask2 = new CountingTask(files, multiplicities, cumulativeBytes, early, split, to);
                 // start work on first subtask
                 subtask1.fork();
                 // initiate computation of second task
@@ -54,18 +147,84 @@ final class ForkJoinWordCounting implements WordCountingService {
                 // retrieve result of async computation of first task
                 final WordCounter wordCounter1 = subtask1.join();
                 // mutate wordCounts2 and return it; merging happens in the current thread
-                return wordCounter2.mergeIn(wordCounter1);
+                if (memoryBudget == null) {
+                    return wordCounter2.mergeIn(wordCounter1);
+                } else {
+                    final long before = wordCounter1.estimatedMemory() + wordCounter2.estimatedMemory();
+                    wordCounter2.mergeIn(wordCounter1);
+                    memoryBudget.free(before - wordCounter2.estimatedMemory());
+                    return mergeEarlyIfOverBudget(wordCounter2);
+                }
+            }
+        }
+
+        private void admit() {
+            if (memoryBudget != null) {
+                try {
+                    memoryBudget.admitLeaf(LEAF_BUFFER_BYTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("interrupted waiting for memory");
+                }
+            }
+        }
+
+        /**
+         * @return the argument, or an empty counter if the argument has been merged into the early counter
+         */
+        private WordCounter mergeEarlyIfOverBudget(final WordCounter wordCounter) {
+            if (wordCounter.size() == 0 || !memoryBudget.isOverBudget()) {
+                return wordCounter;
             }
+            synchronized (early) {
+                final long before = early.estimatedMemory() + wordCounter.estimatedMemory();
+                early.mergeIn(wordCounter);
+                memoryBudget.free(before - early.estimatedMemory());
+            }
+            return new WordCounter();
         }
     }
 
     public WordCounter countWords(final List<File> files) {
-        final ForkJoinPool forkJoinPool = new ForkJoinPool();
+        return countWords(files, null);
+    }
+
+    /**
+     * All files are counted in one run; a file of multiplicity above 1 is counted once, and added multiplied
+     */
+    @Override
+    public WordCounter countWords(final List<File> files, final int[] multiplicities) {
+        checkArgument(multiplicities == null || multiplicities.length == files.size());
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
         try {
             // randomize file order for better balanced task tree
             final List<File> filesCopy = new ArrayList<>(files);
-            Collections.shuffle(filesCopy);
-            return forkJoinPool.invoke(new CountingTask(filesCopy));
+            final int[] multiplicitiesCopy;
+            if (multiplicities == null) {
+                Collections.shuffle(filesCopy);
+                multiplicitiesCopy = null;
+            } else {
+                final List<Integer> order = IntStream.range(0, files.size()).boxed().collect(Collectors.toList());
+                Collections.shuffle(order);
+                multiplicitiesCopy = new int[files.size()];
+                for (int i = 0; i < order.size(); i++) {
+                    filesCopy.set(i, files.get(order.get(i)));
+                    multiplicitiesCopy[i] = multiplicities[order.get(i)];
+                }
+            }
+            final long[] cumulativeBytes = leafSizing.cumulativeBytes(filesCopy, forkJoinPool);
+            final WordCounter early = new WordCounter();
+            final WordCounter wordCounter = forkJoinPool.invoke(
+                    new CountingTask(filesCopy, multiplicitiesCopy, cumulativeBytes, early, 0, filesCopy.size()));
+            if (memoryBudget == null) {
+                return wordCounter;
+            } else {
+                // the result is handed over to the caller, and no longer held by this run
+                memoryBudget.free(wordCounter.estimatedMemory() + early.estimatedMemory());
+                log.info(memoryBudget.toString());
+                // the larger counter absorbs the smaller one
+                return early.size() > wordCounter.size() ? early.mergeIn(wordCounter) : wordCounter.mergeIn(early);
+            }
         } finally {
             forkJoinPool.shutdown();
         }
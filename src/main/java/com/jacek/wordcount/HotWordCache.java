@@ -0,0 +1,144 @@
+package com.jacek.wordcount;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Small direct-mapped cache of the hottest words and their counts, probed with the chars of a token
+ * before a String is made for it and looked up in the hash table of a WordCounter
+ * <p>
+ * Word frequencies are Zipfian, so a thousand slots hold words making up about half of all tokens; a hit hashes
+ * and compares the token's chars in place and increments a primitive count, and allocates nothing, where
+ * counting in the word counter takes a String and its lower-cased copy per token. A miss is counted in the word
+ * counter and wears down the slot's score, which hits build up; once worn out the slot is given to the missing
+ * word, after its previous word's count is flushed. Tokens with other than ASCII chars are not cached
+ * <p>
+ * Counts are held here until flushed, so the cache must be flushed before the word counter is read or merged.
+ * Flushing keeps the cached words, so a cache kept per thread stays warm from one word counter to the next
+ * <p>
+ * Mutable and NOT thread safe!
+ */
+final class HotWordCache {
+    static final int DEFAULT_SLOTS = 1024;
+    // a word hit this many times more than missed by other words of its slot is not evicted by the next misses
+    private static final int MAX_SCORE = 16;
+    // whether lower-casing in the default locale maps ASCII letters to ASCII letters, eg. not in Turkish
+    private static final boolean ASCII_LOWER_CASE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+    private final int mask;
+    private final String[] words;
+    // chars of the words, compared without bounds checks of String.charAt
+    private final char[][] wordChars;
+    private final int[] hashes;
+    private final int[] counts;
+    private final int[] scores;
+    // target of misses and flushes
+    private WordCounter wordCounter;
+
+    HotWordCache() {
+        this(DEFAULT_SLOTS);
+    }
+
+    /**
+     * @param slots number of cached words, a power of 2
+     */
+    HotWordCache(final int slots) {
+        checkArgument(slots > 0 && Integer.bitCount(slots) == 1, "Argument was %s but expected a power of 2", slots);
+        mask = slots - 1;
+        words = new String[slots];
+        wordChars = new char[slots][];
+        hashes = new int[slots];
+        counts = new int[slots];
+        scores = new int[slots];
+    }
+
+    /**
+     * Start counting into a word counter, after the cache was flushed into the previous one
+     *
+     * @param wordCounter word counter to count misses into, and flush counts of cached words to
+     * @return this
+     */
+    HotWordCache attach(final WordCounter wordCounter) {
+        checkState(this.wordCounter == null, "Cache not flushed");
+        this.wordCounter = wordCounter;
+        return this;
+    }
+
+    /**
+     * Count one occurrence of the lower-cased token chars[start, end) in the cache if it is there,
+     * or else in the attached word counter
+     */
+    void countToken(final char[] chars, final int start, final int end) {
+        int hash = 0;
+        char any = 0;
+        for (int i = start; i < end; i++) {
+            final char ch = chars[i];
+            any |= ch;
+            hash = 31 * hash + lowerCase(ch);
+        }
+        if (any >= 0x80 || !ASCII_LOWER_CASE) {
+            wordCounter.countWord(new String(chars, start, end - start).toLowerCase());
+            return;
+        }
+        final int slot = (hash ^ hash >>> 16) & mask;
+        final char[] cached = wordChars[slot];
+        if (cached != null && hashes[slot] == hash && equalsLowerCase(cached, chars, start, end)) {
+            if (++counts[slot] == Integer.MAX_VALUE) {
+                wordCounter.countWord(words[slot], counts[slot]);
+                counts[slot] = 0;
+            }
+            if (scores[slot] < MAX_SCORE) {
+                ++scores[slot];
+            }
+        } else {
+            final String word = new String(chars, start, end - start).toLowerCase();
+            wordCounter.countWord(word);
+            if (--scores[slot] <= 0) {
+                if (cached != null && counts[slot] > 0) {
+                    wordCounter.countWord(words[slot], counts[slot]);
+                }
+                // the word takes the slot, counted in it from its next occurrence on
+                words[slot] = word;
+                wordChars[slot] = word.toCharArray();
+                hashes[slot] = hash;
+                counts[slot] = 0;
+                scores[slot] = 1;
+            }
+        }
+    }
+
+    private static char lowerCase(final char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
+    private static boolean equalsLowerCase(final char[] word, final char[] chars, final int start, final int end) {
+        if (word.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (word[i] != lowerCase(chars[start + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add counts held by the cache to the attached word counter and detach it; the cached words are kept
+     *
+     * @return the word counter, now complete
+     */
+    WordCounter flush() {
+        checkState(wordCounter != null, "No word counter attached");
+        final WordCounter flushed = wordCounter;
+        for (int slot = 0; slot < words.length; slot++) {
+            if (counts[slot] > 0) {
+                flushed.countWord(words[slot], counts[slot]);
+                counts[slot] = 0;
+            }
+        }
+        wordCounter = null;
+        return flushed;
+    }
+}
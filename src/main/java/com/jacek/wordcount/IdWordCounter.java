@@ -0,0 +1,149 @@
+package com.jacek.wordcount;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Word counter storing counts by word ids of a shared WordDictionary, in an open addressing hash table
+ * of primitive ints and longs sized by the number of words this counter has seen, not by the whole dictionary
+ * <p>
+ * Words themselves are stored once, in the dictionary, instead of once per counter,
+ * and merging two counters walks the entries of the other one, without any String hashing
+ * <p>
+ * Mutable and NOT thread safe! (the shared dictionary is)
+ */
+final class IdWordCounter {
+    private static final int EMPTY = 0;     // ids are stored + 1 so no key is 0
+
+    private final WordDictionary dictionary;
+    private int[] keys = new int[1024];
+    private long[] counts = new long[1024];
+    private int size = 0;
+
+    IdWordCounter(final WordDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    WordDictionary getDictionary() {
+        return dictionary;
+    }
+
+    private static int slot(final int key, final int mask) {
+        final int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @param word a non-null string an occurrence of which is to be counted
+     */
+    void countWord(@NonNull final String word) {
+        add(dictionary.idOf(word) + 1, 1L);
+    }
+
+    /**
+     * @param key       id + 1
+     * @param increment value to add to the word's count
+     */
+    private void add(final int key, final long increment) {
+        final int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (int k; (k = keys[i]) != EMPTY; i = (i + 1) & mask) {
+            if (k == key) {
+                counts[i] += increment;
+                return;
+            }
+        }
+        keys[i] = key;
+        counts[i] = increment;
+        if (++size * 4 > keys.length * 3) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        final int[] oldKeys = keys;
+        final long[] oldCounts = counts;
+        keys = new int[2 * oldKeys.length];
+        counts = new long[2 * oldKeys.length];
+        final int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            final int key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = slot(key, mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * Modifies this object by adding another set of counts, in time proportional to the size of the other;
+     * merge the smaller counter into the larger one
+     *
+     * @param other counts to be added to this, using the same dictionary
+     */
+    IdWordCounter mergeIn(final IdWordCounter other) {
+        checkArgument(other.dictionary == dictionary, "counters do not share a dictionary");
+        final int[] otherKeys = other.keys;
+        final long[] otherCounts = other.counts;
+        for (int j = 0; j < otherKeys.length; j++) {
+            if (otherKeys[j] != EMPTY) {
+                add(otherKeys[j], otherCounts[j]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param word non-null string
+     * @return number of times the argument was counted
+     */
+    long getCount(@NonNull final String word) {
+        final int id = dictionary.lookup(word);
+        if (id < 0) {
+            return 0L;
+        }
+        final int mask = keys.length - 1;
+        for (int i = slot(id + 1, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == id + 1) {
+                return counts[i];
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * @return cardinality of unique words counted by this counter
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the total number of all occurrences of all words
+     */
+    long getTotalCount() {
+        long total = 0L;
+        for (final long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param wordCounter target to add all counts of this counter to
+     * @return the argument
+     */
+    WordCounter addTo(final WordCounter wordCounter) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                wordCounter.countWord(dictionary.word(keys[i] - 1), counts[i]);
+            }
+        }
+        return wordCounter;
+    }
+}
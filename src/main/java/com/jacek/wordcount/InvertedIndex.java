@@ -0,0 +1,579 @@
+package com.jacek.wordcount;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Read-only, memory-mapped inverted index: for every word, the files it occurs in with its count in each,
+ * its document frequency and its total count
+ * <p>
+ * The index is built in a single tokenization pass. Each task tokenizes a contiguous range of files in file id order,
+ * appending to postings of its own, kept per word hash partition; partitions are then merged in parallel,
+ * concatenating the postings of tasks in file order, so file ids ascend without any sorting of postings
+ * <p>
+ * Postings are compressed: a posting is the varint delta of its file id from the previous posting's
+ * (from -1 for the first), followed by the varint count of the word in the file
+ * <p>
+ * File layout (big endian, except varints):
+ * <pre>
+ *   int magic, int version, int files, int partitions, int words
+ *   int[partitions + 1] index of the first word of each partition (the last one is words)
+ *   int[words + 1]      key offsets (relative to the start of key bytes)
+ *   int[words + 1]      postings offsets (relative to the start of postings bytes)
+ *   int[words]          document frequencies
+ *   long[words]         total counts
+ *   int[files + 1]      path offsets (relative to the start of path bytes)
+ *   byte[]              UTF-8 encoded keys, by partition, in ascending unsigned byte order within a partition
+ *   byte[]              postings
+ *   byte[]              UTF-8 encoded file paths, in file id order
+ * </pre>
+ * Immutable and thread safe
+ */
+public final class InvertedIndex {
+    private static final Logger log = Logger.getLogger(InvertedIndex.class.getName());
+    private static final int MAGIC = 0x57434949;   // "WCII"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final Comparator<byte[]> KEY_ORDER = UnsignedBytes.lexicographicalComparator();
+    // tasks and partitions per thread, for load balance
+    private static final int TASKS_PER_THREAD = 2;
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private final ByteBuffer buffer;
+    private final int files;
+    private final int partitions;
+    private final int words;
+    private final int keyOffsetsStart;
+    private final int postingsOffsetsStart;
+    private final int frequenciesStart;
+    private final int totalsStart;
+    private final int pathOffsetsStart;
+    private final int keysStart;
+    private final int postingsStart;
+    private final int pathsStart;
+
+    /**
+     * Occurrences of a word in one file
+     */
+    public static final class Posting {
+        private final int fileId;
+        private final long count;
+
+        Posting(final int fileId, final long count) {
+            this.fileId = fileId;
+            this.count = count;
+        }
+
+        public int getFileId() {
+            return fileId;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            } else if (o == null || getClass() != o.getClass()) {
+                return false;
+            } else {
+                final Posting posting = (Posting) o;
+                return fileId == posting.fileId && count == posting.count;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fileId + Long.hashCode(count);
+        }
+
+        @Override
+        public String toString() {
+            return fileId + ":" + count;
+        }
+    }
+
+    private InvertedIndex(final ByteBuffer buffer) {
+        checkArgument(buffer.getInt(0) == MAGIC, "not an inverted index");
+        checkArgument(buffer.getInt(4) == VERSION, "unsupported index version %s", buffer.getInt(4));
+        this.buffer = buffer;
+        this.files = buffer.getInt(8);
+        this.partitions = buffer.getInt(12);
+        this.words = buffer.getInt(16);
+        this.keyOffsetsStart = HEADER_SIZE + 4 * (partitions + 1);
+        this.postingsOffsetsStart = keyOffsetsStart + 4 * (words + 1);
+        this.frequenciesStart = postingsOffsetsStart + 4 * (words + 1);
+        this.totalsStart = frequenciesStart + 4 * words;
+        this.pathOffsetsStart = totalsStart + 8 * words;
+        this.keysStart = pathOffsetsStart + 4 * (files + 1);
+        this.postingsStart = keysStart + buffer.getInt(keyOffsetsStart + 4 * words);
+        this.pathsStart = postingsStart + buffer.getInt(postingsOffsetsStart + 4 * words);
+    }
+
+    private static int partitionOf(final String word, final int partitions) {
+        return Math.floorMod(word.hashCode() * 0x9E3779B9, partitions);
+    }
+
+    /**
+     * Growable byte array with varint encoding
+     */
+    private static final class Bytes {
+        private byte[] bytes = new byte[8];
+        private int length = 0;
+
+        void writeVarLong(long value) {
+            if (length + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + 10));
+            }
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void write(final byte[] source, final int from, final int to) {
+            if (length + to - from > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + to - from));
+            }
+            System.arraycopy(source, from, bytes, length, to - from);
+            length += to - from;
+        }
+    }
+
+    /**
+     * Postings of a word in the files of one task; the count in the last file is pending until the word
+     * occurs in another file, or the task finishes
+     */
+    private static final class Postings {
+        private final Bytes bytes = new Bytes();
+        private int firstFileId = -1;
+        private int lastFileId = -1;
+        private long pendingCount = 0L;
+        private int documentFrequency = 0;
+        private long totalCount = 0L;
+
+        void add(final int fileId) {
+            if (fileId != lastFileId) {
+                if (lastFileId >= 0) {
+                    bytes.writeVarLong(pendingCount);
+                } else {
+                    firstFileId = fileId;
+                }
+                bytes.writeVarLong(fileId - lastFileId);
+                lastFileId = fileId;
+                pendingCount = 0L;
+                ++documentFrequency;
+            }
+            ++pendingCount;
+            ++totalCount;
+        }
+
+        void finish() {
+            bytes.writeVarLong(pendingCount);
+        }
+
+        /**
+         * Append these postings to the postings of earlier files, the last of which is for previousFileId
+         */
+        void appendTo(final Bytes target, final int previousFileId) {
+            // re-encode the first delta, which this task took from -1, and copy the rest as is
+            int firstDeltaLength = 0;
+            while ((bytes.bytes[firstDeltaLength++] & 0x80) != 0) {
+                // skip
+            }
+            target.writeVarLong(firstFileId - previousFileId);
+            target.write(bytes.bytes, firstDeltaLength, bytes.length);
+        }
+    }
+
+    /**
+     * Merged postings of a partition: words in key order, and their postings concatenated
+     */
+    private static final class Partition {
+        private final byte[][] keys;
+        private final int[] documentFrequencies;
+        private final long[] totalCounts;
+        private final int[] postingsEnds;
+        private final Bytes postings;
+
+        Partition(final byte[][] keys, final int[] documentFrequencies, final long[] totalCounts,
+                  final int[] postingsEnds, final Bytes postings) {
+            this.keys = keys;
+            this.documentFrequencies = documentFrequencies;
+            this.totalCounts = totalCounts;
+            this.postingsEnds = postingsEnds;
+            this.postings = postings;
+        }
+    }
+
+    /**
+     * Build an index of files in a single tokenization pass and write it
+     *
+     * @param files       text files to index; their positions in the list are their ids
+     * @param tokenFilter tokens to index
+     * @param parallelism number of threads
+     * @param path        index file to create or overwrite
+     * @throws Exception
+     */
+    static void write(final List<File> files, final TokenFilter tokenFilter, final int parallelism,
+                      final Path path) throws Exception {
+        checkArgument(parallelism > 0);
+        final int partitions = parallelism * PARTITIONS_PER_THREAD;
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            final List<Callable<List<HashMap<String, Postings>>>> tasks = new ArrayList<>();
+            for (final int[] range : ranges(files, parallelism * TASKS_PER_THREAD)) {
+                tasks.add(() -> index(files, range[0], range[1], tokenFilter, partitions));
+            }
+            final List<List<HashMap<String, Postings>>> indexed = new ArrayList<>();
+            for (final Future<List<HashMap<String, Postings>>> future : executorService.invokeAll(tasks)) {
+                indexed.add(future.get());
+            }
+            final List<Callable<Partition>> merges = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                final int partition = p;
+                merges.add(() -> merge(indexed, partition));
+            }
+            final List<Partition> merged = new ArrayList<>(partitions);
+            for (final Future<Partition> future : executorService.invokeAll(merges)) {
+                merged.add(future.get());
+            }
+            write(files, merged, path);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Cut files into contiguous ranges of about the same number of bytes
+     */
+    private static List<int[]> ranges(final List<File> files, final int nRanges) {
+        long totalLength = 0L;
+        final long[] lengths = new long[files.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = files.get(i).length();
+            totalLength += lengths[i];
+        }
+        final List<int[]> ranges = new ArrayList<>(nRanges);
+        final long rangeLength = Math.max(1L, (totalLength + nRanges - 1) / nRanges);
+        int from = 0;
+        long length = 0L;
+        for (int i = 0; i < lengths.length; i++) {
+            length += lengths[i];
+            if (length >= rangeLength) {
+                ranges.add(new int[]{from, i + 1});
+                from = i + 1;
+                length = 0L;
+            }
+        }
+        if (from < lengths.length) {
+            ranges.add(new int[]{from, lengths.length});
+        }
+        return ranges;
+    }
+
+    private static List<HashMap<String, Postings>> index(final List<File> files, final int from, final int to,
+                                                         final TokenFilter tokenFilter, final int partitions) {
+        final List<HashMap<String, Postings>> byPartition = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            byPartition.add(new HashMap<>());
+        }
+        final char[] buffer = new char[Core.CHUNK_SIZE];
+        for (int i = from; i < to; i++) {
+            final int fileId = i;
+            try {
+                Core.tokenize(new FileReader(files.get(i)), buffer, tokenFilter, word ->
+                        byPartition.get(partitionOf(word, partitions)).computeIfAbsent(word, w -> new Postings()).add(fileId));
+            } catch (IOException e) {
+                log.log(Level.SEVERE, e.getMessage());
+            }
+        }
+        for (final HashMap<String, Postings> postingsByWord : byPartition) {
+            for (final Postings postings : postingsByWord.values()) {
+                postings.finish();
+            }
+        }
+        return byPartition;
+    }
+
+    private static Partition merge(final List<List<HashMap<String, Postings>>> indexed, final int partition) {
+        // postings of each word in task order, which is file order
+        final Map<String, List<Postings>> postingsByWord = new HashMap<>();
+        for (final List<HashMap<String, Postings>> task : indexed) {
+            for (final Map.Entry<String, Postings> entry : task.get(partition).entrySet()) {
+                postingsByWord.computeIfAbsent(entry.getKey(), w -> new ArrayList<>(1)).add(entry.getValue());
+            }
+        }
+        final String[] words = postingsByWord.keySet().toArray(new String[0]);
+        final byte[][] keys = new byte[words.length][];
+        final Integer[] order = new Integer[words.length];
+        for (int i = 0; i < words.length; i++) {
+            keys[i] = words[i].getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> KEY_ORDER.compare(keys[i1], keys[i2]));
+
+        final byte[][] sortedKeys = new byte[words.length][];
+        final int[] documentFrequencies = new int[words.length];
+        final long[] totalCounts = new long[words.length];
+        final int[] postingsEnds = new int[words.length];
+        final Bytes merged = new Bytes();
+        for (int j = 0; j < words.length; j++) {
+            final int i = order[j];
+            sortedKeys[j] = keys[i];
+            int previousFileId = -1;
+            for (final Postings postings : postingsByWord.get(words[i])) {
+                postings.appendTo(merged, previousFileId);
+                previousFileId = postings.lastFileId;
+                documentFrequencies[j] += postings.documentFrequency;
+                totalCounts[j] += postings.totalCount;
+            }
+            postingsEnds[j] = merged.length;
+        }
+        return new Partition(sortedKeys, documentFrequencies, totalCounts, postingsEnds, merged);
+    }
+
+    private static void write(final List<File> files, final List<Partition> partitions, final Path path) throws IOException {
+        int words = 0;
+        for (final Partition partition : partitions) {
+            words += partition.keys.length;
+        }
+        final byte[][] paths = new byte[files.size()][];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = files.get(i).getPath().getBytes(StandardCharsets.UTF_8);
+        }
+        try (final OutputStream os = Files.newOutputStream(path);
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(files.size());
+            out.writeInt(partitions.size());
+            out.writeInt(words);
+            int firstWord = 0;
+            for (final Partition partition : partitions) {
+                out.writeInt(firstWord);
+                firstWord += partition.keys.length;
+            }
+            out.writeInt(firstWord);
+            int keyOffset = 0;
+            for (final Partition partition : partitions) {
+                for (final byte[] key : partition.keys) {
+                    out.writeInt(keyOffset);
+                    keyOffset = Math.addExact(keyOffset, key.length);
+                }
+            }
+            out.writeInt(keyOffset);
+            int postingsOffset = 0;
+            for (final Partition partition : partitions) {
+                int start = 0;
+                for (final int end : partition.postingsEnds) {
+                    out.writeInt(postingsOffset);
+                    postingsOffset = Math.addExact(postingsOffset, end - start);
+                    start = end;
+                }
+            }
+            out.writeInt(postingsOffset);
+            for (final Partition partition : partitions) {
+                for (final int documentFrequency : partition.documentFrequencies) {
+                    out.writeInt(documentFrequency);
+                }
+            }
+            for (final Partition partition : partitions) {
+                for (final long totalCount : partition.totalCounts) {
+                    out.writeLong(totalCount);
+                }
+            }
+            int pathOffset = 0;
+            for (final byte[] bytes : paths) {
+                out.writeInt(pathOffset);
+                pathOffset += bytes.length;
+            }
+            out.writeInt(pathOffset);
+            for (final Partition partition : partitions) {
+                for (final byte[] key : partition.keys) {
+                    out.write(key);
+                }
+            }
+            for (final Partition partition : partitions) {
+                out.write(partition.postings.bytes, 0, partition.postings.length);
+            }
+            for (final byte[] bytes : paths) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Map an index file written by write into memory
+     *
+     * @param path index file
+     * @return index backed by a read-only mapping of the file
+     * @throws IOException
+     */
+    public static InvertedIndex open(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new InvertedIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return number of indexed files
+     */
+    public int fileCount() {
+        return files;
+    }
+
+    /**
+     * @return cardinality of unique words
+     */
+    public int size() {
+        return words;
+    }
+
+    /**
+     * @param fileId id of a file, its position in the list the index was built from
+     * @return path of the file
+     */
+    public String getFile(final int fileId) {
+        checkArgument(fileId >= 0 && fileId < files);
+        final int start = pathsStart + buffer.getInt(pathOffsetsStart + 4 * fileId);
+        return new String(bytesAt(start, pathsStart + buffer.getInt(pathOffsetsStart + 4 * (fileId + 1)) - start),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return number of files the word occurs in
+     */
+    public int getDocumentFrequency(@NonNull final String word) {
+        final int i = find(word);
+        return i >= 0 ? buffer.getInt(frequenciesStart + 4 * i) : 0;
+    }
+
+    /**
+     * @return number of occurrences of the word in all files
+     */
+    public long getCount(@NonNull final String word) {
+        final int i = find(word);
+        return i >= 0 ? buffer.getLong(totalsStart + 8 * i) : 0L;
+    }
+
+    /**
+     * @return natural logarithm of the number of files over the number of files the word occurs in,
+     * 0 for words not in the index
+     */
+    public double getInverseDocumentFrequency(@NonNull final String word) {
+        final int documentFrequency = getDocumentFrequency(word);
+        return documentFrequency > 0 ? Math.log((double) files / documentFrequency) : 0.0;
+    }
+
+    /**
+     * @return postings of the word in ascending file id order, empty if not in the index
+     */
+    public List<Posting> getPostings(@NonNull final String word) {
+        final int i = find(word);
+        if (i < 0) {
+            return new ArrayList<>();
+        }
+        final List<Posting> postings = new ArrayList<>(buffer.getInt(frequenciesStart + 4 * i));
+        final int end = postingsStart + buffer.getInt(postingsOffsetsStart + 4 * (i + 1));
+        int fileId = -1;
+        for (int position = postingsStart + buffer.getInt(postingsOffsetsStart + 4 * i); position < end; ) {
+            long delta = 0L;
+            long count = 0L;
+            for (int shift = 0; ; shift += 7) {
+                final byte b = buffer.get(position++);
+                delta |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            for (int shift = 0; ; shift += 7) {
+                final byte b = buffer.get(position++);
+                count |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            fileId += (int) delta;
+            postings.add(new Posting(fileId, count));
+        }
+        return postings;
+    }
+
+    /**
+     * @return index of the word, or -1 if not in the index
+     */
+    private int find(final String word) {
+        final int partition = partitionOf(word, partitions);
+        final byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int lo = buffer.getInt(HEADER_SIZE + 4 * partition);
+        int hi = buffer.getInt(HEADER_SIZE + 4 * (partition + 1));
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int delta = compareKeyAt(mid, key);
+            if (delta < 0) {
+                lo = mid + 1;
+            } else if (delta > 0) {
+                hi = mid;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare i-th key with the argument in unsigned byte order without copying key bytes out of the mapping
+     */
+    private int compareKeyAt(final int i, final byte[] key) {
+        final int start = keysStart + buffer.getInt(keyOffsetsStart + 4 * i);
+        final int length = keysStart + buffer.getInt(keyOffsetsStart + 4 * (i + 1)) - start;
+        final int n = Math.min(length, key.length);
+        for (int j = 0; j < n; j++) {
+            final int delta = UnsignedBytes.compare(buffer.get(start + j), key[j]);
+            if (delta != 0) {
+                return delta;
+            }
+        }
+        return length - key.length;
+    }
+
+    private byte[] bytesAt(final int start, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int j = 0; j < length; j++) {
+            bytes[j] = buffer.get(start + j);
+        }
+        return bytes;
+    }
+}
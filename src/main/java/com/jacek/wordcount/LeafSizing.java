@@ -0,0 +1,118 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Granularity of the leaves of a fork/join task tree over a list of files, shared by the counting services
+ * <p>
+ * Leaf task size is either fixed (singleTaskMaxSize files) or adaptive: an adaptive task
+ * estimates its own running time from file sizes and the throughput measured on completed leaves,
+ * and keeps splitting (at the middle byte, not the middle file) while other workers are likely idle,
+ * ie. while there are few surplus queued tasks, unless it is already too small to be worth a task
+ * <p>
+ * Tasks work on ranges [from, to) of a list of files, with an array of the cumulative costs in bytes of the files
+ */
+final class LeafSizing {
+    // a file is charged as this many bytes on top of its size, for opening and closing it
+    private static final long FILE_OVERHEAD_BYTES = 4096L;
+    // below that estimated time a task is never split, as merging its counter would cost too much relative to it;
+    // above the max it is always split
+    private static final long MIN_LEAF_NANOS = 5_000_000L;
+    private static final long MAX_LEAF_NANOS = 100_000_000L;
+    // as in ForkJoin's own recommendations: few surplus tasks means idle workers to steal work
+    private static final int SURPLUS_THRESHOLD = 3;
+    // assumed throughput before any leaf has been measured
+    private static final double DEFAULT_NANOS_PER_BYTE = 10.0;
+
+    // for lists of files of that size or smaller, 0 means adaptive
+    private final int singleTaskMaxSize;
+    // throughput measurement accumulated over all leaves sized by this
+    private final AtomicLong measuredBytes = new AtomicLong();
+    private final AtomicLong measuredNanos = new AtomicLong();
+
+    /**
+     * @param singleTaskMaxSize max number of files of a leaf task, 0 for adaptive
+     */
+    LeafSizing(final int singleTaskMaxSize) {
+        checkArgument(singleTaskMaxSize >= 0);
+        this.singleTaskMaxSize = singleTaskMaxSize;
+    }
+
+    /**
+     * @return array of files.size() + 1 cumulative costs, all 0 for fixed size leaves
+     */
+    long[] cumulativeBytes(final List<File> files, final ForkJoinPool pool) {
+        final long[] cumulativeBytes = new long[files.size() + 1];
+        if (singleTaskMaxSize == 0) {
+            // file sizes are looked up in parallel, in the pool, as there may be millions of files
+            final long[] costs = pool.submit(() -> IntStream.range(0, files.size())
+                    .parallel()
+                    .mapToLong(i -> files.get(i).length() + FILE_OVERHEAD_BYTES)
+                    .toArray()).join();
+            for (int i = 0; i < costs.length; i++) {
+                cumulativeBytes[i + 1] = cumulativeBytes[i] + costs[i];
+            }
+        }
+        return cumulativeBytes;
+    }
+
+    /**
+     * @return measured nanoseconds per byte (including per file overhead) of leaf tasks, or the default estimate
+     */
+    double getNanosPerByte() {
+        final long bytes = measuredBytes.get();
+        return bytes > 0 ? (double) measuredNanos.get() / bytes : DEFAULT_NANOS_PER_BYTE;
+    }
+
+    /**
+     * To be called from a task of a ForkJoinPool
+     *
+     * @return whether the range is to be counted directly by a leaf
+     */
+    boolean isSmallEnough(final long[] cumulativeBytes, final int from, final int to) {
+        final int taskSize = to - from;
+        if (singleTaskMaxSize > 0) {
+            return taskSize <= singleTaskMaxSize;
+        } else if (taskSize <= 1) {
+            return true;
+        } else {
+            final double estimatedNanos = (cumulativeBytes[to] - cumulativeBytes[from]) * getNanosPerByte();
+            return estimatedNanos < MIN_LEAF_NANOS
+                    || estimatedNanos <= MAX_LEAF_NANOS
+                    && (ForkJoinTask.getPool().getParallelism() == 1
+                    || ForkJoinTask.getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD);
+        }
+    }
+
+    /**
+     * @return index splitting the range in halves of similar cost, leaving both nonempty
+     */
+    int splitIndex(final long[] cumulativeBytes, final int from, final int to) {
+        if (singleTaskMaxSize > 0) {
+            return from + (to - from) / 2;
+        } else {
+            final long half = cumulativeBytes[from] + (cumulativeBytes[to] - cumulativeBytes[from]) / 2;
+            final int i = Arrays.binarySearch(cumulativeBytes, from + 1, to, half);
+            final int split = i >= 0 ? i : -i - 1;
+            return Math.max(from + 1, Math.min(split, to - 1));
+        }
+    }
+
+    /**
+     * Record the throughput of a leaf
+     *
+     * @param nanos time taken to count the range
+     */
+    void measured(final long[] cumulativeBytes, final int from, final int to, final long nanos) {
+        measuredNanos.addAndGet(nanos);
+        measuredBytes.addAndGet(cumulativeBytes[to] - cumulativeBytes[from]);
+    }
+}
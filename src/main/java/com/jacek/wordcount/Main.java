@@ -6,23 +6,46 @@ import java.util.List;
 
 /**
  * Main program to count unique lowercased tokens in files specified as arguments
+ * <p>
+ * A handful of small files is counted on the main thread: JVM startup then dominates, so the short path starts
+ * no thread pool, and picks the top words with a heap instead of Guava's Comparators and TopKSelector.
+ * It still loads stream and lambda classes, for logging and tokenizing. Startup is cut further by launching
+ * from a class data sharing archive, see README
  */
 final class Main {
+    // inputs up to this many bytes are counted on the main thread
+    static final long LEAN_MAX_BYTES = 4L << 20;
+
     /**
-     * @param args list of text files to count tokens in
+     * @param args list of text files to count tokens in, or a single - to count standard input
      */
     public static void main(String[] args) {
         final List<File> files = new ArrayList<>();
         for (String arg : args) {
             files.add(new File(arg));
         }
-        final int singleTaskMaxSize = 200;
-        final WordCountingService wordCountingService = new ForkJoinWordCounting(singleTaskMaxSize);
         try {
-            final WordCounter wordCounter = wordCountingService.countWords(files);
+            long totalLength = 0L;
+            for (final File file : files) {
+                totalLength += file.length();
+            }
+            final boolean stdin = args.length == 1 && args[0].equals("-");
+            final boolean lean = !stdin && totalLength <= LEAN_MAX_BYTES;
+            final WordCounter wordCounter;
+            if (stdin) {
+                // one thread reads the pipe, all cores count
+                wordCounter = new StreamWordCounting(Runtime.getRuntime().availableProcessors()).countWords(System.in);
+            } else if (lean) {
+                wordCounter = new SerialWordCounting().countWords(files);
+            } else {
+                // leaf task size adapts to file sizes, measured throughput and idle workers
+                final WordCountingService wordCountingService = new ForkJoinWordCounting();
+                wordCounter = wordCountingService.countWords(files);
+            }
             System.out.println("token count   = " + wordCounter.size());
             System.out.println("wordCounters = " + wordCounter.getPerformanceDataAsString());
-            System.out.println("wordCounters top 20 = " + wordCounter.topWords(20));
+            System.out.println("wordCounters top 20 = "
+                    + (lean ? wordCounter.topWordsWithHeap(20) : wordCounter.topWordsInParallel(20)));
         } catch (Exception e) {
             e.printStackTrace();
         }
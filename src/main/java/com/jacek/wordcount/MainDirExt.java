@@ -1,7 +1,13 @@
 package com.jacek.wordcount;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -9,24 +15,147 @@ import static com.google.common.base.Preconditions.checkArgument;
  * Main program to count unique lower-cased tokens in files specified by directory + file extension like .txt or .c
  */
 final class MainDirExt {
+    private static final List<String> FLAGS = Arrays.asList("--binary", "--dedup", "--hot-words", "--no-numbers");
+    private static final List<String> VALUED_OPTIONS = Arrays.asList("--include=", "--exclude=", "--min-size=",
+            "--max-size=", "--checkpoint=", "--checkpoint-interval=", "--export=", "--memory-budget=", "--stop-words=",
+            "--min-length=", "--max-length=", "--sample=", "--sample-adaptive=", "--index=");
+    // options which do something else than count all words
+    private static final List<String> MODES = Arrays.asList("--sample=", "--sample-adaptive=", "--index=");
+    // options of counting all words
+    private static final List<String> COUNTING_OPTIONS = Arrays.asList("--dedup", "--hot-words", "--checkpoint=",
+            "--checkpoint-interval=", "--export=", "--memory-budget=");
+
     /**
-     * @param args 2 args: root dir for text files, and file extension
+     * @param args 2 args: root dir for text files, and file extension, followed by options:
+     *             --include=GLOB and --exclude=GLOB, repeatable, to select further files, or skip files and directories,
+     *             by name, or by path relative to the root dir if the pattern has a slash,
+     *             --min-size=BYTES and --max-size=BYTES to skip smaller or larger files,
+     *             --binary to count files that look binary too,
+     *             --dedup to count files with identical contents once,
+     *             --hot-words to count the hottest words of each worker thread in a small cache in front of its counter,
+     *             --checkpoint=FILE to checkpoint counts and completed files, and resume from the file if it exists,
+     *             --checkpoint-interval=SECONDS between checkpoints (default 60),
+     *             --export=DIR to write all counts, sorted by count, as TSV files partitioned by word hash,
+     *             --memory-budget=MB to throttle counting by estimated memory,
+     *             --stop-words=FILE to drop words listed in a file, one per line,
+     *             --min-length=N and --max-length=N to drop shorter or longer tokens,
+     *             --no-numbers to drop numeric tokens,
+     *             --sample=FRACTION to estimate the top words from a random sample of that fraction of the bytes,
+     *             --sample-adaptive=FRACTION to sample that fraction more at a time until the top words are stable,
+     *             --index=FILE to write an inverted index of the files, with postings and document frequencies, instead;
+     *             unknown options, and options which do not apply with others, are rejected
      */
     public static void main(String[] args) {
-        checkArgument(args.length == 2, "arguments expected: directory, file extension");
+        checkArgument(args.length >= 2, "arguments expected: directory, file extension [--include=GLOB] [--exclude=GLOB] [--min-size=BYTES] [--max-size=BYTES] [--binary] [--dedup] [--hot-words] [--checkpoint=FILE] [--checkpoint-interval=SECONDS] [--export=DIR] [--memory-budget=MB] [--stop-words=FILE] [--min-length=N] [--max-length=N] [--no-numbers] [--sample=FRACTION] [--sample-adaptive=FRACTION] [--index=FILE]");
 
         final String dir = args[0];
         final String ext = args[1];
+        final List<String> options = Arrays.asList(args).subList(2, args.length);
+        checkOptions(options);
         try {
-            final List<File> files = Core.filesInDirWithExtension(dir, ext);
-            final int singleTaskMaxSize = 200;
-            final WordCountingService wordCountingService = new ForkJoinWordCounting(singleTaskMaxSize);
+            final List<String> includes = new ArrayList<>();
+            includes.add("*" + ext);
+            final List<String> excludes = new ArrayList<>();
+            long minSize = 0L;
+            long maxSize = Long.MAX_VALUE;
+            MemoryBudget memoryBudget = null;
+            List<String> stopWords = new ArrayList<>();
+            int minLength = 1;
+            int maxLength = Integer.MAX_VALUE;
+            Path checkpoint = null;
+            long checkpointIntervalMillis = CheckpointedWordCounting.DEFAULT_INTERVAL_MILLIS;
+            for (final String option : options) {
+                if (option.startsWith("--include=")) {
+                    includes.add(option.substring(10));
+                } else if (option.startsWith("--exclude=")) {
+                    excludes.add(option.substring(10));
+                } else if (option.startsWith("--min-size=")) {
+                    minSize = Long.parseLong(option.substring(11));
+                } else if (option.startsWith("--max-size=")) {
+                    maxSize = Long.parseLong(option.substring(11));
+                } else if (option.startsWith("--memory-budget=")) {
+                    memoryBudget = new MemoryBudget(Long.parseLong(option.substring(16)) << 20);
+                } else if (option.startsWith("--stop-words=")) {
+                    stopWords = TokenFilter.readStopWords(Paths.get(option.substring(13)));
+                } else if (option.startsWith("--min-length=")) {
+                    minLength = Integer.parseInt(option.substring(13));
+                } else if (option.startsWith("--max-length=")) {
+                    maxLength = Integer.parseInt(option.substring(13));
+                } else if (option.startsWith("--checkpoint=")) {
+                    checkpoint = Paths.get(option.substring(13));
+                } else if (option.startsWith("--checkpoint-interval=")) {
+                    checkpointIntervalMillis = Long.parseLong(option.substring(22)) * 1000L;
+                }
+            }
+            // binary files and files outside the patterns or size limits never reach the counting pool
+            final FileSelector.Selection selection = new FileSelector(includes, excludes, minSize, maxSize,
+                    !options.contains("--binary")).select(Paths.get(dir));
+            System.out.println(selection);
+            final List<File> files = selection.files;
+            final TokenFilter tokenFilter = new TokenFilter(stopWords, minLength, maxLength, options.contains("--no-numbers"));
+            for (final String option : options) {
+                if (option.startsWith("--sample=") || option.startsWith("--sample-adaptive=")) {
+                    final SampledWordCounting sampling = new SampledWordCounting(
+                            Double.parseDouble(option.substring(option.indexOf('=') + 1)),
+                            SampledWordCounting.DEFAULT_CHUNK_BYTES, System.nanoTime(),
+                            Runtime.getRuntime().availableProcessors(), tokenFilter);
+                    System.out.println("estimated top 20 = " + (option.startsWith("--sample=")
+                            ? sampling.topWords(files, 20) : sampling.topWordsAdaptive(files, 20)));
+                    return;
+                } else if (option.startsWith("--index=")) {
+                    InvertedIndex.write(files, tokenFilter, Runtime.getRuntime().availableProcessors(),
+                            Paths.get(option.substring(8)));
+                    final InvertedIndex index = InvertedIndex.open(Paths.get(option.substring(8)));
+                    System.out.println("indexed " + index.size() + " words in " + index.fileCount() + " files");
+                    return;
+                }
+            }
+            // leaf task size adapts to file sizes, measured throughput and idle workers;
+            // a checkpointed run counts batches in a fixed pool instead, to record which files are done,
+            // and a deduplicated one counts the unique files in a single run of either
+            WordCountingService wordCountingService = checkpoint != null
+                    ? new CheckpointedWordCounting(checkpoint, checkpointIntervalMillis,
+                    Runtime.getRuntime().availableProcessors(), tokenFilter)
+                    : new ForkJoinWordCounting(0, Runtime.getRuntime().availableProcessors(), memoryBudget, tokenFilter,
+                    options.contains("--hot-words"));
+            if (options.contains("--dedup")) {
+                wordCountingService = new DeduplicatingWordCounting(wordCountingService);
+            }
             final WordCounter wordCounter = wordCountingService.countWords(files);
             System.out.println("token count   = " + wordCounter.size());
             System.out.println("wordCounters = " + wordCounter.getPerformanceDataAsString());
-            System.out.println("wordCounters top 20 = " + wordCounter.topWords(20));
+            System.out.println("wordCounters top 20 = " + wordCounter.topWordsInParallel(20));
+            for (final String option : options) {
+                if (option.startsWith("--export=")) {
+                    final WordCountExporter exporter = new WordCountExporter(WordCountExporter.Format.TSV,
+                            WordCountExporter.Order.BY_COUNT, Runtime.getRuntime().availableProcessors());
+                    System.out.println("exported = " + exporter.export(wordCounter, Paths.get(option.substring(9)), "counts"));
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * @param options options following the directory and file extension
+     * @throws IllegalArgumentException if an option is unknown, or does not apply with another option
+     */
+    static void checkOptions(final List<String> options) {
+        final Set<String> names = new HashSet<>();
+        for (final String option : options) {
+            final String name = option.substring(0, option.indexOf('=') + 1);
+            checkArgument(FLAGS.contains(option) || VALUED_OPTIONS.contains(name), "unknown option %s", option);
+            names.add(name.isEmpty() ? option : name);
+        }
+        final long modes = MODES.stream().filter(names::contains).count();
+        checkArgument(modes <= 1, "only one of --sample, --sample-adaptive and --index can be given");
+        checkArgument(modes == 0 || COUNTING_OPTIONS.stream().noneMatch(names::contains),
+                "%s do not apply to --sample, --sample-adaptive or --index", COUNTING_OPTIONS);
+        checkArgument(!names.contains("--checkpoint=")
+                        || !names.contains("--memory-budget=") && !names.contains("--hot-words"),
+                "--memory-budget and --hot-words do not apply to a checkpointed run");
+        checkArgument(names.contains("--checkpoint=") || !names.contains("--checkpoint-interval="),
+                "--checkpoint-interval needs --checkpoint");
+    }
 }
@@ -0,0 +1,120 @@
+package com.jacek.wordcount;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bookkeeping of estimated memory held by word counting tasks against a configured budget
+ * <p>
+ * Leaf tasks are admitted while estimated usage is under budget; otherwise they wait until memory is freed,
+ * except that one leaf is always admitted when no other leaf is running, so counting never deadlocks.
+ * Waiting uses ForkJoinPool.managedBlock so that a pool can compensate for blocked workers
+ * <p>
+ * Estimates, not measurements: see WordCounter.estimatedMemory
+ */
+final class MemoryBudget {
+    private final long budget;
+    private long used = 0L;
+    private long peak = 0L;
+    private int activeLeaves = 0;
+
+    /**
+     * @param budget estimated bytes counting may use
+     */
+    MemoryBudget(final long budget) {
+        checkArgument(budget > 0);
+        this.budget = budget;
+    }
+
+    /**
+     * @param fraction of maximum heap size
+     * @return budget of a fraction of the heap
+     */
+    static MemoryBudget ofMaxHeap(final double fraction) {
+        checkArgument(fraction > 0 && fraction <= 1);
+        return new MemoryBudget((long) (fraction * Runtime.getRuntime().maxMemory()));
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return highest estimated usage seen so far
+     */
+    synchronized long getPeak() {
+        return peak;
+    }
+
+    synchronized boolean isOverBudget() {
+        return used > budget;
+    }
+
+    /**
+     * Wait until a leaf task needing the given memory may start, and account for that memory
+     *
+     * @param bytes estimated memory of the leaf's buffers
+     * @throws InterruptedException
+     */
+    void admitLeaf(final long bytes) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (MemoryBudget.this) {
+                    while (!tryAdmit(bytes)) {
+                        MemoryBudget.this.wait();
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                synchronized (MemoryBudget.this) {
+                    return tryAdmit(bytes);
+                }
+            }
+        });
+    }
+
+    /**
+     * must hold the lock; admits at most once per successful call
+     */
+    private boolean tryAdmit(final long bytes) {
+        if (activeLeaves == 0 || used + bytes <= budget) {
+            ++activeLeaves;
+            allocate(bytes);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @param bytes memory of the leaf's buffers, released when the leaf is done
+     */
+    synchronized void leafDone(final long bytes) {
+        --activeLeaves;
+        free(bytes);
+    }
+
+    synchronized void allocate(final long bytes) {
+        used += bytes;
+        peak = Math.max(peak, used);
+    }
+
+    synchronized void free(final long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("memory budget %d KB, used %d KB, peak %d KB", budget >> 10, used >> 10, peak >> 10);
+    }
+}
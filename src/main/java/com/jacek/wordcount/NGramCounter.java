@@ -0,0 +1,243 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.Comparators;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Counter of word n-grams, each n-gram keyed by the ids of its words packed in primitives:
+ * the ids of the last two words in a long, and for trigrams the id of the first word in an int alongside,
+ * so any vocabulary a WordDictionary can hold fits
+ * <p>
+ * Ids come from a WordDictionary which must be shared by all counters to be merged.
+ * Counts are kept in an open addressing hash table of primitive longs,
+ * so no String or object is created per n-gram occurrence
+ * <p>
+ * Mutable and NOT thread safe!
+ */
+public final class NGramCounter {
+    private static final long EMPTY = 0L;   // ids are stored + 1 so no n-gram key is 0
+    private static final int BITS_PER_WORD = 32;
+    private static final long WORD_MASK = 0xFFFFFFFFL;
+
+    private final WordDictionary dictionary;
+    private final int n;
+    private final long keyMask;
+    private long[] keys = new long[4096];
+    // packed id of the first word of trigrams, null for shorter n-grams
+    private int[] firstIds;
+    private long[] counts = new long[4096];
+    private int size = 0;
+
+    /**
+     * @param dictionary shared source of word ids
+     * @param n          number of words in an n-gram, 1 to 3
+     */
+    public NGramCounter(final WordDictionary dictionary, final int n) {
+        checkArgument(n >= 1 && n <= 3, "n was %s but expected 1, 2 or 3", n);
+        this.dictionary = dictionary;
+        this.n = n;
+        this.keyMask = n == 1 ? WORD_MASK : -1L;
+        this.firstIds = n == 3 ? new int[keys.length] : null;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public WordDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return a sink of consecutive tokens of one text counting every n-gram seen;
+     * n-grams never span two sequences, eg. two files
+     */
+    Consumer<String> newSequence() {
+        return new Consumer<String>() {
+            private long key = 0L;
+            private int seen = 0;
+
+            @Override
+            public void accept(final String token) {
+                // the word shifted out of the long key is the first word of a trigram
+                final int first = (int) (key >>> BITS_PER_WORD);
+                key = ((key << BITS_PER_WORD) | (dictionary.idOf(token) + 1L)) & keyMask;
+                if (++seen >= n) {
+                    add(key, first, 1L);
+                }
+            }
+        };
+    }
+
+    private static int slot(final long key, final int first, final int mask) {
+        final long h = (key ^ first * 0xC2B2AE3D27D4EB4FL) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @param key            packed ids of the last two words of the n-gram, or of its only word
+     * @param firstOfTrigram packed id of the first word of a trigram, ignored for shorter n-grams
+     * @param increment      value to add to the n-gram's count
+     */
+    private void add(final long key, final int firstOfTrigram, final long increment) {
+        final int first = firstIds != null ? firstOfTrigram : 0;
+        final int mask = keys.length - 1;
+        int i = slot(key, first, mask);
+        for (long k; (k = keys[i]) != EMPTY; i = (i + 1) & mask) {
+            if (k == key && (firstIds == null || firstIds[i] == first)) {
+                counts[i] += increment;
+                return;
+            }
+        }
+        keys[i] = key;
+        if (firstIds != null) {
+            firstIds[i] = first;
+        }
+        counts[i] = increment;
+        if (++size * 4 > keys.length * 3) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldFirstIds = firstIds;
+        final long[] oldCounts = counts;
+        keys = new long[2 * oldKeys.length];
+        firstIds = oldFirstIds != null ? new int[2 * oldKeys.length] : null;
+        counts = new long[2 * oldKeys.length];
+        final int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            final long key = oldKeys[j];
+            if (key != EMPTY) {
+                final int first = oldFirstIds != null ? oldFirstIds[j] : 0;
+                int i = slot(key, first, mask);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                if (firstIds != null) {
+                    firstIds[i] = first;
+                }
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * Modifies this object by adding another set of counts
+     *
+     * @param other counts to be added to this, using the same dictionary and n
+     */
+    NGramCounter mergeIn(final NGramCounter other) {
+        checkArgument(other.dictionary == dictionary && other.n == n, "incompatible n-gram counters");
+        final long[] otherKeys = other.keys;
+        final int[] otherFirstIds = other.firstIds;
+        final long[] otherCounts = other.counts;
+        for (int j = 0; j < otherKeys.length; j++) {
+            if (otherKeys[j] != EMPTY) {
+                add(otherKeys[j], otherFirstIds != null ? otherFirstIds[j] : 0, otherCounts[j]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return cardinality of unique n-grams
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the total number of all occurrences of all n-grams
+     */
+    public long getTotalCount() {
+        long total = 0L;
+        for (final long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param words n non-null words
+     * @return number of times the n-gram was counted
+     */
+    public long getCount(@NonNull final String... words) {
+        checkArgument(words.length == n, "expected %s words", n);
+        long key = 0L;
+        int first = 0;
+        for (final String word : words) {
+            final int id = dictionary.lookup(word);
+            if (id < 0) {
+                return 0;
+            }
+            first = (int) (key >>> BITS_PER_WORD);
+            key = (key << BITS_PER_WORD) | (id + 1L);
+        }
+        if (firstIds == null) {
+            first = 0;
+        }
+        final int mask = keys.length - 1;
+        for (int i = slot(key, first, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key && (firstIds == null || firstIds[i] == first)) {
+                return counts[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param i slot of an n-gram
+     * @return words of the n-gram separated by single spaces (tokens never contain white space)
+     */
+    private String decode(final int i) {
+        final StringBuilder sb = new StringBuilder();
+        if (firstIds != null) {
+            sb.append(dictionary.word(firstIds[i] - 1)).append(' ');
+        }
+        for (int j = Math.min(n, 2); --j >= 0; ) {
+            sb.append(dictionary.word((int) ((keys[i] >>> (j * BITS_PER_WORD)) & WORD_MASK) - 1));
+            if (j > 0) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Only n-grams at least as frequent as the k-th highest count are decoded to Strings
+     *
+     * @param k nonnegative number of n-grams of highest frequency
+     * @return List of immutable WordCounts of highest frequency in order of nonincreasing frequency,
+     * words of an n-gram separated by single spaces
+     */
+    public List<WordCounter.WordCount> topNGrams(final int k) {
+        checkArgument(k >= 0, "Argument was %s but expected nonnegative", k);
+        // min-heap of k highest counts
+        final PriorityQueue<Long> highest = new PriorityQueue<>(Math.max(1, k));
+        for (int i = 0; i < keys.length && k > 0; i++) {
+            if (keys[i] != EMPTY) {
+                if (highest.size() < k) {
+                    highest.add(counts[i]);
+                } else if (counts[i] > highest.peek()) {
+                    highest.poll();
+                    highest.add(counts[i]);
+                }
+            }
+        }
+        final long threshold = highest.isEmpty() ? Long.MAX_VALUE : highest.peek();
+        return IntStream.range(0, keys.length)
+                .filter(i -> keys[i] != EMPTY && counts[i] >= threshold)
+                .mapToObj(i -> new WordCounter.WordCount(decode(i), counts[i]))
+                .collect(Comparators.greatest(k, WordCounter.WordCount.COMPARATOR));
+    }
+}
@@ -16,7 +16,7 @@ final class Punctuation {
         }
     }
 
-    private static boolean isPunctuation(final int ch) {
+    static boolean isPunctuation(final int ch) {
         return ch < 128 && IS_PUNCTUATION[ch];
     }
 
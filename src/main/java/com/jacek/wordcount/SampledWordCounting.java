@@ -0,0 +1,376 @@
+package com.jacek.wordcount;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Approximate top k words from a uniform random sample of the bytes of the files, for exploratory queries
+ * on trees too large to count exactly
+ * <p>
+ * Files are cut into chunks of a fixed number of bytes, and chunks are drawn in a random order, so every
+ * byte is equally likely to be sampled whatever the size of its file. A token belongs to the chunk its first byte
+ * is in, so chunks partition the tokens and sampling all of them counts exactly. Counts are scaled up by the ratio
+ * of total to sampled bytes
+ * <p>
+ * Sampled chunks are dealt round robin into random groups counted separately; the spread of the group
+ * counts gives, by jackknife, a confidence interval for each estimated count, and the overlap of intervals
+ * bounds the rank of each word. Rank bounds only consider words seen in the sample
+ */
+final class SampledWordCounting {
+    private static final Logger log = Logger.getLogger(SampledWordCounting.class.getName());
+    static final int DEFAULT_CHUNK_BYTES = 1 << 16;
+    // random groups for variance estimation
+    private static final int GROUPS = 20;
+    // for 95% confidence intervals
+    private static final double Z = 1.96;
+
+    private final double fraction;
+    private final int chunkBytes;
+    private final long seed;
+    private final int parallelism;
+    private final TokenFilter tokenFilter;
+
+    /**
+     * Estimated count and rank of a word, with their confidence intervals
+     */
+    static final class WordEstimate {
+        final String word;
+        final long count;
+        final long low;
+        final long high;
+        final int rankLow;
+        final int rankHigh;
+
+        WordEstimate(final String word, final long count, final long low, final long high,
+                     final int rankLow, final int rankHigh) {
+            this.word = word;
+            this.count = count;
+            this.low = low;
+            this.high = high;
+            this.rankLow = rankLow;
+            this.rankHigh = rankHigh;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("\"%s\":%d [%d, %d] rank [%d, %d]", word, count, low, high, rankLow, rankHigh);
+        }
+    }
+
+    /**
+     * Top k estimates, in order of nonincreasing estimated count, and how much was sampled to get them
+     */
+    static final class Estimate {
+        final List<WordEstimate> topWords;
+        final long sampledBytes;
+        final long totalBytes;
+        final int rounds;
+
+        Estimate(final List<WordEstimate> topWords, final long sampledBytes, final long totalBytes, final int rounds) {
+            this.topWords = topWords;
+            this.sampledBytes = sampledBytes;
+            this.totalBytes = totalBytes;
+            this.rounds = rounds;
+        }
+
+        double getSampledFraction() {
+            return totalBytes > 0 ? (double) sampledBytes / totalBytes : 1.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sampled %.1f%% of %d bytes in %d rounds: %s",
+                    100.0 * getSampledFraction(), totalBytes, rounds, topWords);
+        }
+    }
+
+    private static final class Chunk {
+        private final File file;
+        private final long start;
+        private final long end;
+
+        Chunk(final File file, final long start, final long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * @param fraction    fraction of the bytes to sample, or to add in each round when sampling adaptively
+     * @param chunkBytes  size of sampled chunks
+     * @param seed        seed of the random order of chunks
+     * @param parallelism number of counting threads
+     * @param tokenFilter tokens to count
+     */
+    SampledWordCounting(final double fraction, final int chunkBytes, final long seed, final int parallelism,
+                        final TokenFilter tokenFilter) {
+        checkArgument(fraction > 0.0 && fraction <= 1.0);
+        checkArgument(chunkBytes > 0);
+        checkArgument(parallelism > 0);
+        this.fraction = fraction;
+        this.chunkBytes = chunkBytes;
+        this.seed = seed;
+        this.parallelism = parallelism;
+        this.tokenFilter = tokenFilter;
+    }
+
+    /**
+     * Estimate the top k words from a single sample of the configured fraction of the bytes
+     */
+    Estimate topWords(final List<File> files, final int k) throws Exception {
+        return sample(files, k, false);
+    }
+
+    /**
+     * Estimate the top k words, sampling a further fraction of the bytes in each round until a round leaves
+     * the top k words and their order unchanged, or all bytes are sampled
+     */
+    Estimate topWordsAdaptive(final List<File> files, final int k) throws Exception {
+        return sample(files, k, true);
+    }
+
+    private Estimate sample(final List<File> files, final int k, final boolean adaptive) throws Exception {
+        checkArgument(k > 0);
+        final List<Chunk> chunks = new ArrayList<>();
+        long totalBytes = 0L;
+        for (final File file : files) {
+            final long length = file.length();
+            for (long start = 0; start < length; start += chunkBytes) {
+                chunks.add(new Chunk(file, start, Math.min(start + chunkBytes, length)));
+            }
+            totalBytes += length;
+        }
+        Collections.shuffle(chunks, new Random(seed));
+
+        final WordCounter[] groups = new WordCounter[GROUPS];
+        final long[] groupBytes = new long[GROUPS];
+        for (int g = 0; g < GROUPS; g++) {
+            groups[g] = new WordCounter();
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            final long roundBytes = (long) Math.ceil(fraction * totalBytes);
+            long sampledBytes = 0L;
+            int next = 0;
+            int rounds = 0;
+            List<WordEstimate> previous = null;
+            while (true) {
+                // deal the chunks of this round to the groups
+                final List<List<Chunk>> dealt = new ArrayList<>(GROUPS);
+                for (int g = 0; g < GROUPS; g++) {
+                    dealt.add(new ArrayList<>());
+                }
+                for (long added = 0L; added < roundBytes && next < chunks.size(); next++) {
+                    final Chunk chunk = chunks.get(next);
+                    dealt.get(next % GROUPS).add(chunk);
+                    groupBytes[next % GROUPS] += chunk.end - chunk.start;
+                    added += chunk.end - chunk.start;
+                    sampledBytes += chunk.end - chunk.start;
+                }
+                final List<Callable<Void>> tasks = new ArrayList<>(GROUPS);
+                for (int g = 0; g < GROUPS; g++) {
+                    final WordCounter group = groups[g];
+                    final List<Chunk> groupChunks = dealt.get(g);
+                    tasks.add(() -> {
+                        final char[] buffer = new char[Core.CHUNK_SIZE];
+                        for (final Chunk chunk : groupChunks) {
+                            countChunk(chunk, buffer, group);
+                        }
+                        return null;
+                    });
+                }
+                for (final Future<Void> future : executorService.invokeAll(tasks)) {
+                    future.get();
+                }
+                ++rounds;
+                final List<WordEstimate> estimates = estimate(groups, groupBytes, totalBytes, k);
+                if (!adaptive || next == chunks.size() || sameWords(previous, estimates)) {
+                    return new Estimate(estimates, sampledBytes, totalBytes, rounds);
+                }
+                previous = estimates;
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static boolean sameWords(final List<WordEstimate> previous, final List<WordEstimate> estimates) {
+        return previous != null && previous.stream().map(e -> e.word).collect(Collectors.toList())
+                .equals(estimates.stream().map(e -> e.word).collect(Collectors.toList()));
+    }
+
+    /**
+     * Count the tokens starting in a chunk: a token cut by the start of the chunk belongs to the previous chunk,
+     * and a token cut by its end is read to its end. Delimiters are ASCII whitespace, whose bytes
+     * never occur within a multibyte character, so cutting on them is safe for UTF-8 as well
+     */
+    private void countChunk(final Chunk chunk, final char[] buffer, final WordCounter wordCounter) {
+        try (final RandomAccessFile file = new RandomAccessFile(chunk.file, "r")) {
+            long start = chunk.start;
+            if (start > 0) {
+                // skip the rest of a token started in the previous chunk
+                file.seek(start - 1);
+                while (start < chunk.end && !isDelimiter(file.read())) {
+                    ++start;
+                }
+                if (start == chunk.end) {
+                    return;
+                }
+            }
+            // read the chunk, and on to the end of its last token
+            byte[] bytes = new byte[(int) (chunk.end - start) + 64];
+            int n = (int) (chunk.end - start);
+            file.seek(start);
+            file.readFully(bytes, 0, n);
+            if (!isDelimiter(bytes[n - 1])) {
+                for (int b = file.read(); b >= 0 && !isDelimiter(b); b = file.read()) {
+                    if (n == bytes.length) {
+                        bytes = Arrays.copyOf(bytes, 2 * n);
+                    }
+                    bytes[n++] = (byte) b;
+                }
+            }
+            // files are counted with FileReader, decoding with the default charset
+            Core.tokenize(new InputStreamReader(new ByteArrayInputStream(bytes, 0, n), Charset.defaultCharset()),
+                    buffer, tokenFilter, wordCounter::countWord);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, e.getMessage());
+        }
+    }
+
+    private static boolean isDelimiter(final int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * Ratio estimates of the counts of all sampled words, with jackknife intervals, clipped below by the count
+     * actually seen; the top k by estimate get rank bounds from the words whose intervals lie entirely above theirs
+     * (certainly ahead) or overlap them (possibly ahead)
+     */
+    private static List<WordEstimate> estimate(final WordCounter[] groups, final long[] groupBytes,
+                                               final long totalBytes, final int k) {
+        final WordCounter sample = new WordCounter();
+        long sampledBytes = 0L;
+        int nonEmptyGroups = 0;
+        for (int g = 0; g < GROUPS; g++) {
+            sample.addCounts(groups[g], 1);
+            sampledBytes += groupBytes[g];
+            nonEmptyGroups += groupBytes[g] > 0 ? 1 : 0;
+        }
+        if (sampledBytes == 0L) {
+            return Collections.emptyList();
+        }
+        final double scale = (double) totalBytes / sampledBytes;
+        final boolean exact = sampledBytes == totalBytes;
+        final double finiteCorrection = 1.0 - (double) sampledBytes / totalBytes;
+
+        final List<String> words = new ArrayList<>(sample.getAllWords());
+        final long[] lows = new long[words.size()];
+        final long[] highs = new long[words.size()];
+        final double[] deleteOne = new double[GROUPS];
+        for (int i = 0; i < words.size(); i++) {
+            final String word = words.get(i);
+            final long seen = sample.getCount(word);
+            final double estimate = seen * scale;
+            double halfWidth;
+            if (exact) {
+                halfWidth = 0.0;
+            } else if (nonEmptyGroups < 2) {
+                halfWidth = Double.POSITIVE_INFINITY;
+            } else {
+                // jackknife variance of the ratio of count to bytes, deleting one group at a time
+                double mean = 0.0;
+                for (int g = 0; g < GROUPS; g++) {
+                    if (groupBytes[g] > 0) {
+                        deleteOne[g] = (double) (seen - groups[g].getCount(word)) / (sampledBytes - groupBytes[g]);
+                        mean += deleteOne[g];
+                    }
+                }
+                mean /= nonEmptyGroups;
+                double sumOfSquares = 0.0;
+                for (int g = 0; g < GROUPS; g++) {
+                    if (groupBytes[g] > 0) {
+                        sumOfSquares += (deleteOne[g] - mean) * (deleteOne[g] - mean);
+                    }
+                }
+                final double variance = (nonEmptyGroups - 1.0) / nonEmptyGroups * sumOfSquares * finiteCorrection;
+                halfWidth = Z * totalBytes * Math.sqrt(variance);
+            }
+            final long low = Math.max(seen, Math.round(estimate - halfWidth));
+            final long high = Double.isInfinite(halfWidth) ? Long.MAX_VALUE
+                    : Math.max(low, Math.round(estimate + halfWidth));
+            lows[i] = low;
+            highs[i] = high;
+        }
+        final long[] sortedLows = lows.clone();
+        final long[] sortedHighs = highs.clone();
+        Arrays.sort(sortedLows);
+        Arrays.sort(sortedHighs);
+
+        final List<WordEstimate> top = new ArrayList<>(k);
+        final Map<String, Integer> index = new HashMap<>(words.size() * 2);
+        for (int i = 0; i < words.size(); i++) {
+            index.put(words.get(i), i);
+        }
+        for (final WordCounter.WordCount wordCount : sample.topWords(k)) {
+            final int i = index.get(wordCount.getWord());
+            final int certainlyAhead = sortedLows.length - upperBound(sortedLows, highs[i]);
+            // words whose interval reaches this one's, less the word itself
+            final int possiblyAhead = sortedHighs.length - lowerBound(sortedHighs, lows[i]) - 1;
+            top.add(new WordEstimate(wordCount.getWord(), Math.round(wordCount.getCount() * scale),
+                    lows[i], highs[i], 1 + certainlyAhead, 1 + possiblyAhead));
+        }
+        return top;
+    }
+
+    // index of the first element greater than key
+    private static int upperBound(final long[] sorted, final long key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // index of the first element not less than key
+    private static int lowerBound(final long[] sorted, final long key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
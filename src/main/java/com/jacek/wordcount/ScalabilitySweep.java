@@ -0,0 +1,176 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Runs every parallel WordCountingService across thread counts and corpus sizes, and writes CSV rows of
+ * wall time, throughput, speedup and efficiency relative to SerialWordCounting on the same corpus,
+ * and merge share: the fraction of counting and merging time that was spent merging, as reported by the result
+ * <p>
+ * Efficiency dropping while merge share grows with threads points at the serial merge as the Amdahl limit;
+ * efficiency dropping with flat merge share points at I/O or memory bandwidth
+ * <p>
+ * Every service runs once, unmeasured, before the first measurement, so that JIT compilation and class loading
+ * are not charged to whichever configuration happens to come first
+ */
+final class ScalabilitySweep {
+    static final String HEADER = "service,threads,files,bytes,millis,mb_per_s,speedup,efficiency,merge_share";
+
+    // service factories by name, taking a number of threads
+    private static final Map<String, IntFunction<WordCountingService>> SERVICES = new LinkedHashMap<>();
+
+    static {
+        SERVICES.put("simpleParallel", SimpleParallelWordCounting::new);
+        SERVICES.put("forkJoin", threads -> new ForkJoinWordCounting(200, threads));
+        SERVICES.put("forkJoinAdaptive", threads -> new ForkJoinWordCounting(0, threads));
+        SERVICES.put("dictionary", threads -> new DictionaryWordCounting(200, threads));
+        SERVICES.put("stream", StreamWordCounting::new);
+    }
+
+    private final List<Integer> threadCounts;
+    private final List<Integer> corpusSizes;
+    private final int reps;
+
+    /**
+     * @param threadCounts numbers of threads to run each service with
+     * @param corpusSizes  numbers of files of the corpora, each a prefix of the shuffled input
+     * @param reps         runs per measurement, of which the fastest is recorded
+     */
+    ScalabilitySweep(final List<Integer> threadCounts, final List<Integer> corpusSizes, final int reps) {
+        checkArgument(!threadCounts.isEmpty() && !corpusSizes.isEmpty());
+        checkArgument(reps > 0);
+        this.threadCounts = threadCounts;
+        this.corpusSizes = corpusSizes;
+        this.reps = reps;
+    }
+
+    /**
+     * @param max highest number of threads
+     * @return 1, 2, 4, ... up to max, and max itself
+     */
+    static List<Integer> powersOfTwoUpTo(final int max) {
+        checkArgument(max > 0);
+        final TreeSet<Integer> counts = new TreeSet<>();
+        for (int n = 1; n < max; n *= 2) {
+            counts.add(n);
+        }
+        counts.add(max);
+        return new ArrayList<>(counts);
+    }
+
+    /**
+     * @param files input files; corpora are prefixes of a fixed shuffle of them
+     * @param out   destination of CSV rows, header first
+     * @throws Exception from the services
+     */
+    void run(final List<File> files, final Writer out) throws Exception {
+        final List<File> shuffled = new ArrayList<>(files);
+        Collections.shuffle(shuffled, new Random(0L));
+        warmUp(shuffled.subList(0, Math.min(corpusSizes.get(0), shuffled.size())));
+        final PrintWriter csv = new PrintWriter(out);
+        csv.println(HEADER);
+        for (final int corpusSize : corpusSizes) {
+            final List<File> corpus = shuffled.subList(0, Math.min(corpusSize, shuffled.size()));
+            long bytes = 0L;
+            for (final File file : corpus) {
+                bytes += file.length();
+            }
+            final Measurement serial = measure(corpus, threads -> new SerialWordCounting(), 1);
+            write(csv, "serial", 1, corpus.size(), bytes, serial, serial);
+            for (final Map.Entry<String, IntFunction<WordCountingService>> service : SERVICES.entrySet()) {
+                for (final int threads : threadCounts) {
+                    write(csv, service.getKey(), threads, corpus.size(), bytes,
+                            measure(corpus, service.getValue(), threads), serial);
+                }
+            }
+            csv.flush();
+        }
+    }
+
+    private void warmUp(final List<File> corpus) throws Exception {
+        final int threads = Collections.max(threadCounts);
+        new SerialWordCounting().countWords(corpus);
+        for (final IntFunction<WordCountingService> factory : SERVICES.values()) {
+            factory.apply(threads).countWords(corpus);
+        }
+    }
+
+    private static final class Measurement {
+        private final long nanos;
+        private final double mergeShare;
+
+        Measurement(final long nanos, final double mergeShare) {
+            this.nanos = nanos;
+            this.mergeShare = mergeShare;
+        }
+    }
+
+    private Measurement measure(final List<File> corpus, final IntFunction<WordCountingService> factory,
+                                final int threads) throws Exception {
+        Measurement best = null;
+        for (int i = 0; i < reps; i++) {
+            final WordCountingService service = factory.apply(threads);
+            final long before = System.nanoTime();
+            final WordCounter wordCounter = service.countWords(corpus);
+            final long nanos = System.nanoTime() - before;
+            if (best == null || nanos < best.nanos) {
+                final long mergeMillis = wordCounter.getCumulativeMergeMillis();
+                final long workMillis = mergeMillis + wordCounter.getCumulativeBatchMillis();
+                best = new Measurement(nanos, workMillis > 0 ? (double) mergeMillis / workMillis : 0.0);
+            }
+        }
+        return best;
+    }
+
+    private static void write(final PrintWriter csv, final String service, final int threads, final int files,
+                              final long bytes, final Measurement measurement, final Measurement serial) {
+        final double seconds = Math.max(measurement.nanos, 1L) / 1e9;
+        final double speedup = (double) serial.nanos / Math.max(measurement.nanos, 1L);
+        csv.println(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.2f,%.3f,%.3f,%.3f",
+                service, threads, files, bytes, measurement.nanos / 1_000_000,
+                bytes / seconds / (1 << 20), speedup, speedup / threads, measurement.mergeShare));
+    }
+
+    /**
+     * @param args root dir for text files, file extension, optionally max threads (default: available processors)
+     *             and output CSV file (default: standard output)
+     */
+    public static void main(String[] args) {
+        checkArgument(args.length >= 2, "arguments expected: directory, file extension [max threads] [output.csv]");
+        try {
+            final List<File> files = Core.filesInDirWithExtension(args[0], args[1]);
+            final int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            // corpora of 1/8, 1/4, 1/2 and all of the files
+            final List<Integer> corpusSizes = new ArrayList<>();
+            for (int divisor = 8; divisor >= 1; divisor /= 2) {
+                corpusSizes.add(Math.max(1, files.size() / divisor));
+            }
+            final ScalabilitySweep sweep = new ScalabilitySweep(powersOfTwoUpTo(maxThreads), corpusSizes, 3);
+            if (args.length > 3) {
+                try (final Writer out = new FileWriter(args[3])) {
+                    sweep.run(files, out);
+                }
+            } else {
+                final PrintWriter out = new PrintWriter(System.out);
+                sweep.run(files, out);
+                out.flush();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -6,10 +6,30 @@ import java.time.Instant;
 import java.util.List;
 
 final class SerialWordCounting implements WordCountingService {
+    private final TokenFilter tokenFilter;
+
+    SerialWordCounting() {
+        this(TokenFilter.NONE);
+    }
+
+    /**
+     * @param tokenFilter tokens it rejects are not counted
+     */
+    SerialWordCounting(final TokenFilter tokenFilter) {
+        this.tokenFilter = tokenFilter;
+    }
+
     @Override
     public WordCounter countWords(final List<File> files) {
         final WordCounter wordCounter = new WordCounter();
-        Core.countWordsInFiles(files, wordCounter);
+        Core.countWordsInFiles(files, tokenFilter, wordCounter);
+        return wordCounter;
+    }
+
+    @Override
+    public WordCounter countWords(final List<File> files, final int[] multiplicities) {
+        final WordCounter wordCounter = new WordCounter();
+        Core.countWordsInFiles(files, multiplicities, tokenFilter, false, wordCounter);
         return wordCounter;
     }
 }
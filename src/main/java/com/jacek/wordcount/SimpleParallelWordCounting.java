@@ -6,9 +6,10 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.jacek.wordcount.Core.countWordsInFiles;
@@ -16,6 +17,10 @@ import static com.jacek.wordcount.Core.countWordsInFiles;
 /**
  * A natural implementation of parallelization of word count batches
  * with a thread pool and Futures
+ * <p>
+ * Results are taken in completion order, and as soon as two are ready they are merged on a pool thread,
+ * the smaller counter into the larger, while other batches are still being counted;
+ * the critical path is the slowest batch followed by one merge
  */
 final class SimpleParallelWordCounting implements WordCountingService {
     private final int noOfThreads;
@@ -55,16 +60,34 @@ final class SimpleParallelWordCounting implements WordCountingService {
         }
 
         final ExecutorService executorService = Executors.newFixedThreadPool(noOfThreads);
-        final List<Future<WordCounter>> futures = executorService.invokeAll(tasks);
-        // wait for 1st result
-        final WordCounter wordCounter = futures.get(0).get();
-        // merge in subsequent results as they are or become ready
-        for (int i = 1; i < futures.size(); i++) {
-            wordCounter.mergeIn(futures.get(i).get());
+        try {
+            final CompletionService<WordCounter> completionService = new ExecutorCompletionService<>(executorService);
+            for (final CountTask task : tasks) {
+                completionService.submit(task);
+            }
+            int outstanding = tasks.size();
+            // a result waiting for another one to be merged with
+            WordCounter pending = null;
+            while (outstanding > 0) {
+                final WordCounter ready = completionService.take().get();
+                --outstanding;
+                if (pending == null) {
+                    pending = ready;
+                } else {
+                    final WordCounter other = pending;
+                    pending = null;
+                    completionService.submit(() -> mergeSmallerIntoLarger(other, ready));
+                    ++outstanding;
+                }
+            }
+            return pending != null ? pending : new WordCounter();
+        } finally {
+            executorService.shutdownNow();
         }
-        final int unfinished = executorService.shutdownNow().size();
-        assert unfinished == 0 : "there should be no unfinished tasks";
-        return wordCounter;
+    }
+
+    private static WordCounter mergeSmallerIntoLarger(final WordCounter wc1, final WordCounter wc2) {
+        return wc1.size() >= wc2.size() ? wc1.mergeIn(wc2) : wc2.mergeIn(wc1);
     }
 
     public static void main(String[] args) {
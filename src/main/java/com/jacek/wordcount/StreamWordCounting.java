@@ -0,0 +1,237 @@
+package com.jacek.wordcount;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Parallel word counting of sequential streams of text, eg. stdin fed by a pipe
+ * <p>
+ * The calling thread reads the sources one after another into byte chunks, cuts each chunk after its last
+ * white space byte (carrying the rest over to the next chunk), and hands chunks over to worker threads
+ * each counting into its own WordCounter. A fixed set of recycled chunk buffers bounds memory use
+ * and makes the reader wait when workers fall behind; while waiting it checks every POLL_MILLIS whether a worker
+ * failed, and if one did it throws the worker's exception instead of waiting for it forever.
+ * <p>
+ * Cutting at white space bytes without decoding is safe for UTF-8 and single byte charsets
+ */
+final class StreamWordCounting implements WordCountingService {
+    private static final Logger log = Logger.getLogger(StreamWordCounting.class.getName());
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final Chunk END = new Chunk(new byte[0], 0);
+    private static final long POLL_MILLIS = 100L;
+
+    private final int noOfThreads;
+    private final Charset charset;
+
+    StreamWordCounting(final int noOfThreads) {
+        this(noOfThreads, Charset.defaultCharset());
+    }
+
+    StreamWordCounting(final int noOfThreads, final Charset charset) {
+        checkArgument(noOfThreads >= 1);
+        this.noOfThreads = noOfThreads;
+        this.charset = charset;
+    }
+
+    private static final class Chunk {
+        private final byte[] bytes;
+        private final int length;
+
+        Chunk(final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Worker counting chunks until it receives END
+     */
+    private final class CountTask implements Callable<WordCounter> {
+        private final BlockingQueue<Chunk> chunks;
+        private final BlockingQueue<byte[]> freeBuffers;
+
+        CountTask(final BlockingQueue<Chunk> chunks, final BlockingQueue<byte[]> freeBuffers) {
+            this.chunks = chunks;
+            this.freeBuffers = freeBuffers;
+        }
+
+        @Override
+        public WordCounter call() throws InterruptedException {
+            final WordCounter wordCounter = new WordCounter();
+            final char[] buffer = new char[Core.CHUNK_SIZE];
+            for (Chunk chunk = chunks.take(); chunk != END; chunk = chunks.take()) {
+                final Instant before = Instant.now();
+                try {
+                    Core.countWordsFromReader(new InputStreamReader(
+                            new ByteArrayInputStream(chunk.bytes, 0, chunk.length), charset), buffer, wordCounter);
+                } catch (IOException e) {
+                    log.log(Level.SEVERE, e.getMessage());
+                } finally {
+                    if (chunk.bytes.length == CHUNK_BYTES) {    // grown buffers are not recycled
+                        freeBuffers.put(chunk.bytes);
+                    }
+                }
+                wordCounter.updateBatchStats(1, Duration.between(before, Instant.now()).toMillis());
+            }
+            return wordCounter;
+        }
+    }
+
+    private static int endOfLastDelimiter(final byte[] bytes, final int length) {
+        for (int i = length; --i >= 0; ) {
+            final byte b = bytes[i];
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Throw the exception of a worker which failed; workers complete only after END otherwise
+     */
+    private static void checkWorkers(final List<Future<WordCounter>> workers)
+            throws ExecutionException, InterruptedException {
+        for (final Future<WordCounter> worker : workers) {
+            if (worker.isDone()) {
+                worker.get();
+                throw new IllegalStateException("worker completed before the end of input");
+            }
+        }
+    }
+
+    private static byte[] takeBuffer(final BlockingQueue<byte[]> freeBuffers, final List<Future<WordCounter>> workers)
+            throws ExecutionException, InterruptedException {
+        byte[] bytes;
+        while ((bytes = freeBuffers.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            checkWorkers(workers);
+        }
+        return bytes;
+    }
+
+    private static void putChunk(final BlockingQueue<Chunk> chunks, final Chunk chunk,
+                                 final List<Future<WordCounter>> workers)
+            throws ExecutionException, InterruptedException {
+        while (!chunks.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkWorkers(workers);
+        }
+    }
+
+    /**
+     * Read a source and cut it into chunks for the workers; the buffer being filled is recycled
+     * if reading fails
+     */
+    private static void readChunks(final InputStream in, final BlockingQueue<Chunk> chunks,
+                                   final BlockingQueue<byte[]> freeBuffers, final List<Future<WordCounter>> workers)
+            throws IOException, ExecutionException, InterruptedException {
+        byte[] bytes = takeBuffer(freeBuffers, workers);
+        try {
+            int length = 0;
+            int nRead;
+            while ((nRead = in.read(bytes, length, bytes.length - length)) >= 0) {
+                length += nRead;
+                if (length == bytes.length) {
+                    final int end = endOfLastDelimiter(bytes, length);
+                    if (end == 0) {     // a single token filling the whole buffer
+                        final byte[] grown = new byte[2 * bytes.length];
+                        System.arraycopy(bytes, 0, grown, 0, length);
+                        if (bytes.length == CHUNK_BYTES) {
+                            freeBuffers.put(bytes);
+                        }
+                        bytes = grown;
+                    } else {
+                        final int carry = length - end;
+                        final byte[] next = carry <= CHUNK_BYTES ? takeBuffer(freeBuffers, workers) : new byte[bytes.length];
+                        System.arraycopy(bytes, end, next, 0, carry);
+                        final byte[] full = bytes;
+                        bytes = next;
+                        putChunk(chunks, new Chunk(full, end), workers);
+                        length = carry;
+                    }
+                }
+            }
+            if (length > 0) {
+                putChunk(chunks, new Chunk(bytes, length), workers);
+                bytes = null;
+            }
+        } finally {
+            if (bytes != null && bytes.length == CHUNK_BYTES) {
+                freeBuffers.put(bytes);
+            }
+        }
+    }
+
+    /**
+     * @param sources text sources read in sequence by the calling thread and counted in parallel
+     * @return counts of unique words
+     * @throws Exception
+     */
+    WordCounter countWordsInSources(final List<TextSource> sources) throws Exception {
+        // 2 buffers per worker: one being counted, one waiting
+        final int nBuffers = 2 * noOfThreads + 1;
+        final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(nBuffers);
+        for (int i = 0; i < nBuffers; i++) {
+            freeBuffers.add(new byte[CHUNK_BYTES]);
+        }
+        final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(nBuffers + noOfThreads);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(noOfThreads);
+        try {
+            final List<Future<WordCounter>> futures = new ArrayList<>(noOfThreads);
+            for (int i = 0; i < noOfThreads; i++) {
+                futures.add(executorService.submit(new CountTask(chunks, freeBuffers)));
+            }
+            for (final TextSource source : sources) {
+                try (final InputStream in = source.open()) {
+                    readChunks(in, chunks, freeBuffers, futures);
+                } catch (IOException e) {
+                    log.log(Level.SEVERE, e.getMessage());
+                }
+            }
+            for (int i = 0; i < noOfThreads; i++) {
+                putChunk(chunks, END, futures);
+            }
+            final WordCounter wordCounter = futures.get(0).get();
+            for (int i = 1; i < futures.size(); i++) {
+                wordCounter.mergeIn(futures.get(i).get());
+            }
+            return wordCounter;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Counting a single InputStream, eg. System.in, with all workers
+     */
+    WordCounter countWords(final InputStream in) throws Exception {
+        return countWordsInSources(Collections.singletonList(TextSource.of(in)));
+    }
+
+    @Override
+    public WordCounter countWords(final List<File> files) throws Exception {
+        return countWordsInSources(files.stream().map(TextSource::of).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A source of text bytes: a file, a channel, an InputStream (eg. stdin or a pipe) or an in-memory buffer
+ */
+@FunctionalInterface
+public interface TextSource {
+    /**
+     * @return a stream of the source's bytes, to be closed by the caller
+     * @throws IOException
+     */
+    InputStream open() throws IOException;
+
+    static TextSource of(final File file) {
+        return () -> new FileInputStream(file);
+    }
+
+    /**
+     * @param channel channel to read once; it is closed together with the opened stream
+     */
+    static TextSource of(final ReadableByteChannel channel) {
+        return () -> Channels.newInputStream(channel);
+    }
+
+    /**
+     * @param inputStream stream to read once; it is closed after reading
+     */
+    static TextSource of(final InputStream inputStream) {
+        return () -> inputStream;
+    }
+
+    /**
+     * @param buffer bytes between position and limit are the text; the buffer itself is not modified
+     */
+    static TextSource of(final ByteBuffer buffer) {
+        return () -> new InputStream() {
+            private final ByteBuffer bytes = buffer.duplicate();
+
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (len == 0) {
+                    return 0;
+                } else if (!bytes.hasRemaining()) {
+                    return -1;
+                } else {
+                    final int n = Math.min(len, bytes.remaining());
+                    bytes.get(b, off, n);
+                    return n;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,272 @@
+package com.jacek.wordcount;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Immutable, thread safe filter of tokens applied by the tokenizer to the chars of a token,
+ * after punctuation stripping but before a String is created, so a dropped token costs no allocation
+ * and no hash map update
+ * <p>
+ * Stop words are looked up in a perfect hash table built by hash and displace: one pass over the chars computes
+ * a seeded 64 bit hash, whose high half picks a bucket, and the displacement stored for the bucket, chosen at
+ * construction so that no two stop words collide, remixes the low half to pick the single slot to compare against.
+ * Displacements tried per bucket are bounded: if a bucket finds none, the table is rebuilt with another seed, and
+ * after a few seeds the stop words go to a plain HashSet instead. A bitset of stop word lengths rejects tokens of
+ * other lengths before any hashing. Lookup lower-cases char by char, like String.toLowerCase except for its few
+ * context and locale dependent mappings
+ */
+final class TokenFilter {
+    static final TokenFilter NONE = new TokenFilter(new ArrayList<>(), 1, Integer.MAX_VALUE, false);
+
+    private final int minLength;
+    private final int maxLength;
+    private final boolean dropNumeric;
+    // bit i set if some stop word has length i, bit 63 for any length of 63 or more
+    private final long stopWordLengths;
+    // a bucket which fits with none of that many displacements makes the table be rebuilt with another seed
+    private static final int MAX_DISPLACEMENT = 1 << 12;
+    private static final int MAX_SEEDS = 8;
+
+    private final int[] displacements;
+    private final char[][] slots;
+    private final long seed;
+    // stop words if no seed led to a perfect hash table, else null
+    private final Set<String> fallback;
+    private final boolean isNone;
+    // hash of the configuration, independent of the order of stop words
+    private final long digest;
+
+    /**
+     * @param stopWords   words to drop, matched ignoring case
+     * @param minLength   shortest token kept, in chars after punctuation stripping
+     * @param maxLength   longest token kept
+     * @param dropNumeric whether to drop tokens of digits only, possibly with inner . , : or -
+     */
+    TokenFilter(final Collection<String> stopWords, final int minLength, final int maxLength,
+                final boolean dropNumeric) {
+        checkArgument(minLength >= 1 && minLength <= maxLength);
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.dropNumeric = dropNumeric;
+        final Set<String> words = new LinkedHashSet<>();
+        for (final String stopWord : stopWords) {
+            if (!stopWord.isEmpty()) {
+                words.add(stopWord.toLowerCase());
+            }
+        }
+        long lengths = 0L;
+        for (final String word : words) {
+            lengths |= 1L << Math.min(word.length(), 63);
+        }
+        this.stopWordLengths = lengths;
+        // about 4 words per bucket, and a load factor of about 0.8
+        final int nBuckets = Math.max(1, words.size() / 4);
+        this.displacements = new int[nBuckets];
+        this.slots = new char[Math.max(1, words.size() + words.size() / 4)][];
+        long tried = 0L;
+        boolean built = false;
+        for (int i = 0; i < MAX_SEEDS && !built; i++) {
+            tried = 0x9E3779B97F4A7C15L * (i + 1);
+            Arrays.fill(displacements, 0);
+            Arrays.fill(slots, null);
+            built = build(new ArrayList<>(words), tried);
+        }
+        this.seed = tried;
+        this.fallback = built ? null : words;
+        this.isNone = words.isEmpty() && minLength == 1 && maxLength == Integer.MAX_VALUE && !dropNumeric;
+        this.digest = digest(words, minLength, maxLength, dropNumeric);
+    }
+
+    private static long digest(final Set<String> words, final int minLength, final int maxLength,
+                               final boolean dropNumeric) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putInt(minLength)
+                .putInt(maxLength)
+                .putBoolean(dropNumeric)
+                .putInt(words.size());
+        for (final String word : new TreeSet<>(words)) {
+            hasher.putString(word, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * @return stable hash of the stop words, min and max length and numeric dropping, equal for equal filters
+     */
+    long digest() {
+        return digest;
+    }
+
+    /**
+     * @param path text file of stop words, one per line; blank lines and lines starting with # are ignored
+     */
+    static List<String> readStopWords(final Path path) throws IOException {
+        final List<String> words = new ArrayList<>();
+        for (final String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            final String word = line.trim();
+            if (!word.isEmpty() && !word.startsWith("#")) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Places the largest buckets first, each with the first displacement putting all its words in free slots
+     *
+     * @return false if a bucket fits with no displacement up to MAX_DISPLACEMENT, eg. as two of its words hash alike
+     */
+    private boolean build(final List<String> words, final long seed) {
+        final List<List<char[]>> buckets = new ArrayList<>(displacements.length);
+        for (int i = 0; i < displacements.length; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (final String word : words) {
+            final char[] chars = word.toCharArray();
+            buckets.get(bucket(hash(chars, 0, chars.length, seed))).add(chars);
+        }
+        final Integer[] order = new Integer[buckets.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(buckets.get(b).size(), buckets.get(a).size()));
+        final int[] placed = new int[slots.length];
+        for (final int b : order) {
+            final List<char[]> bucket = buckets.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            int d = 1;
+            while (!fits(bucket, d, placed, seed)) {
+                if (++d > MAX_DISPLACEMENT) {
+                    return false;
+                }
+            }
+            displacements[b] = d;
+            for (final char[] word : bucket) {
+                slots[slot(hash(word, 0, word.length, seed), d)] = word;
+            }
+        }
+        return true;
+    }
+
+    private boolean fits(final List<char[]> bucket, final int displacement, final int[] placed, final long seed) {
+        // placed holds the displacement tried last for a slot, marking slots taken by this bucket in this try
+        boolean fits = true;
+        for (final char[] word : bucket) {
+            final int slot = slot(hash(word, 0, word.length, seed), displacement);
+            if (slots[slot] != null || placed[slot] == displacement) {
+                fits = false;
+            }
+            placed[slot] = displacement;
+        }
+        if (!fits) {
+            // unmark so that a later try with the same displacement, for another bucket, starts clean
+            for (final char[] word : bucket) {
+                placed[slot(hash(word, 0, word.length, seed), displacement)] = 0;
+            }
+        }
+        return fits;
+    }
+
+    private static char lower(final char ch) {
+        return ch < 128 ? (ch - 'A' < 26 && ch >= 'A' ? (char) (ch | 0x20) : ch) : Character.toLowerCase(ch);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the lower-cased chars, from a seed, finished with murmur3's 64 bit mix;
+     * unlike a hash computed on 32 bits, words colliding for one seed do not for the next
+     */
+    private static long hash(final char[] chars, final int start, final int end, final long seed) {
+        long h = seed;
+        for (int i = start; i < end; i++) {
+            h = (h ^ lower(chars[i])) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ h >>> 33;
+    }
+
+    private int bucket(final long hash) {
+        return (int) ((hash >>> 32) % displacements.length);
+    }
+
+    private int slot(final long hash, final int displacement) {
+        int h = (int) hash ^ displacement * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return (h & Integer.MAX_VALUE) % slots.length;
+    }
+
+    boolean isStopWord(final char[] chars, final int start, final int end) {
+        final int length = end - start;
+        if ((stopWordLengths & 1L << Math.min(length, 63)) == 0) {
+            return false;
+        }
+        if (fallback != null) {
+            return fallback.contains(new String(chars, start, length).toLowerCase());
+        }
+        final long hash = hash(chars, start, end, seed);
+        final int displacement = displacements[bucket(hash)];
+        if (displacement == 0) {
+            return false;
+        }
+        final char[] candidate = slots[slot(hash, displacement)];
+        if (candidate == null || candidate.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate[i] != lower(chars[start + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumeric(final char[] chars, final int start, final int end) {
+        // punctuation is already stripped, so the first and last chars are not separators
+        for (int i = start; i < end; i++) {
+            final char ch = chars[i];
+            if ((ch < '0' || ch > '9') && ch != '.' && ch != ',' && ch != ':' && ch != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the token chars[start, end) is to be counted
+     */
+    boolean accepts(final char[] chars, final int start, final int end) {
+        if (isNone) {
+            return true;
+        }
+        final int length = end - start;
+        return length >= minLength && length <= maxLength
+                && !(dropNumeric && isNumeric(chars, start, end))
+                && !isStopWord(chars, start, end);
+    }
+
+    /**
+     * @return true if the token, already stripped of punctuation, is to be counted
+     */
+    boolean accepts(final String token) {
+        return isNone || accepts(token.toCharArray(), 0, token.length());
+    }
+}
@@ -0,0 +1,186 @@
+package com.jacek.wordcount;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Word counts over a sliding window of a stream: the last paneCount panes of either
+ * a fixed number of tokens or a fixed duration each
+ * <p>
+ * Each pane is a WordCounter in a ring buffer; window counts are kept up to date by adding every occurrence
+ * and subtracting the counts of a pane when it expires, so queries never merge panes.
+ * The k most frequent words are maintained incrementally: between pane expirations counts only grow,
+ * and a word whose count grows past the least of the top k simply replaces it;
+ * the top k are recomputed once per expiration, when counts drop
+ * <p>
+ * Mutable and NOT thread safe!
+ */
+final class WindowedWordCounter {
+    private final WordCounter[] panes;
+    private final WordCounter window = new WordCounter();
+    private int current = 0;
+    // pane size: either a number of tokens, or milliseconds of the clock
+    private final long tokensPerPane;
+    private final long paneMillis;
+    private final Clock clock;
+    private long currentPaneTokens = 0L;
+    private long currentPaneStart;
+    // maintained top k of the window, ordered by count then word, and looked up by word
+    private final int k;
+    private final TreeSet<WordCounter.WordCount> top = new TreeSet<>();
+    private final HashMap<String, WordCounter.WordCount> topByWord = new HashMap<>();
+
+    /**
+     * Window of the last paneCount * tokensPerPane tokens (give or take the part of the current pane)
+     *
+     * @param paneCount     number of panes in the window
+     * @param tokensPerPane number of tokens after which a new pane starts
+     * @param k             number of most frequent words maintained incrementally
+     */
+    WindowedWordCounter(final int paneCount, final long tokensPerPane, final int k) {
+        this(paneCount, tokensPerPane, 0L, k, null);
+    }
+
+    /**
+     * Window of the last paneCount * paneDuration of time (give or take the part of the current pane)
+     *
+     * @param paneCount    number of panes in the window
+     * @param paneDuration duration after which a new pane starts
+     * @param k            number of most frequent words maintained incrementally
+     * @param clock        source of time
+     */
+    WindowedWordCounter(final int paneCount, final Duration paneDuration, final int k, final Clock clock) {
+        this(paneCount, 0L, paneDuration.toMillis(), k, clock);
+        checkArgument(paneMillis > 0, "pane duration must be at least 1 ms");
+    }
+
+    private WindowedWordCounter(final int paneCount, final long tokensPerPane, final long paneMillis,
+                                final int k, final Clock clock) {
+        checkArgument(paneCount > 0);
+        checkArgument(tokensPerPane > 0 || clock != null);
+        checkArgument(k >= 0);
+        this.panes = new WordCounter[paneCount];
+        for (int i = 0; i < paneCount; i++) {
+            panes[i] = new WordCounter();
+        }
+        this.tokensPerPane = tokensPerPane;
+        this.paneMillis = paneMillis;
+        this.clock = clock;
+        this.currentPaneStart = clock != null ? clock.millis() : 0L;
+        this.k = k;
+    }
+
+    /**
+     * @param word a non-null string an occurrence of which is to be counted in the current pane
+     */
+    void countWord(@NonNull final String word) {
+        if (clock != null) {
+            advanceToNow();
+        } else if (currentPaneTokens == tokensPerPane) {
+            advance(1);
+        }
+        ++currentPaneTokens;
+        panes[current].countWord(word);
+        window.countWord(word);
+        updateTop(word);
+    }
+
+    private void updateTop(final String word) {
+        if (k == 0) {
+            return;
+        }
+        final WordCounter.WordCount updated = new WordCounter.WordCount(word, window.getCount(word));
+        final WordCounter.WordCount old = topByWord.get(word);
+        if (old != null) {
+            top.remove(old);
+        } else if (top.size() == k) {
+            if (updated.compareTo(top.first()) <= 0) {
+                return;
+            }
+            topByWord.remove(top.pollFirst().getWord());
+        }
+        top.add(updated);
+        topByWord.put(word, updated);
+    }
+
+    private void advanceToNow() {
+        final long elapsedPanes = (clock.millis() - currentPaneStart) / paneMillis;
+        if (elapsedPanes > 0) {
+            advance((int) Math.min(elapsedPanes, panes.length));
+            currentPaneStart += elapsedPanes * paneMillis;
+        }
+    }
+
+    /**
+     * Start new panes, expiring the oldest ones
+     *
+     * @param n number of panes to advance by, at most paneCount
+     */
+    private void advance(final int n) {
+        for (int i = 0; i < n; i++) {
+            current = (current + 1) % panes.length;
+            window.addCounts(panes[current], -1);
+            panes[current] = new WordCounter();
+        }
+        currentPaneTokens = 0L;
+        // counts dropped: recompute top k
+        top.clear();
+        topByWord.clear();
+        for (final WordCounter.WordCount wordCount : window.topWords(k)) {
+            top.add(wordCount);
+            topByWord.put(wordCount.getWord(), wordCount);
+        }
+    }
+
+    /**
+     * @param word non-null string
+     * @return number of occurrences of the word in the window
+     */
+    long getCount(@NonNull final String word) {
+        if (clock != null) {
+            advanceToNow();
+        }
+        return window.getCount(word);
+    }
+
+    /**
+     * @return cardinality of unique words in the window
+     */
+    int size() {
+        if (clock != null) {
+            advanceToNow();
+        }
+        return window.size();
+    }
+
+    /**
+     * Cheap for n up to k, maintained incrementally, otherwise computed from window counts
+     *
+     * @param n nonnegative number of words of highest frequency
+     * @return List of immutable WordCounts of highest frequency in the window in order of nonincreasing frequency
+     */
+    List<WordCounter.WordCount> topWords(final int n) {
+        checkArgument(n >= 0, "Argument was %s but expected nonnegative", n);
+        if (clock != null) {
+            advanceToNow();
+        }
+        if (n > k) {
+            return window.topWords(n);
+        } else {
+            final List<WordCounter.WordCount> result = new ArrayList<>(n);
+            for (Iterator<WordCounter.WordCount> it = top.descendingIterator(); it.hasNext() && result.size() < n; ) {
+                result.add(it.next());
+            }
+            return result;
+        }
+    }
+}
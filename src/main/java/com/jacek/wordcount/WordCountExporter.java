@@ -0,0 +1,298 @@
+package com.jacek.wordcount;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Writes the full vocabulary of a WordCounter to hash partitioned files, concurrently, one thread per partition
+ * <p>
+ * Sorting happens per partition, over arrays of references to the words already in the counter:
+ * by word with a parallel sort of Strings, by count with a parallel sort of primitive longs packing
+ * the inverted count (capped at Integer.MAX_VALUE) with the word's index, followed by sorting runs
+ * of equal counts by word, and the rare counts past the cap by exact count.
+ * Unsorted output to a single file streams straight from the counter with nothing materialized at all;
+ * to several files, the words are partitioned once, in parallel, and each partition streams its own words.
+ * <p>
+ * Output goes through a direct buffer to a FileChannel, encoded by hand as UTF-8
+ */
+final class WordCountExporter {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    enum Format {
+        TSV(".tsv"), CSV(".csv"), JSON(".json");
+
+        private final String extension;
+
+        Format(final String extension) {
+            this.extension = extension;
+        }
+    }
+
+    enum Order {
+        UNSORTED, BY_COUNT, BY_WORD
+    }
+
+    private final Format format;
+    private final Order order;
+    private final int partitions;
+
+    /**
+     * @param format     output format; JSON writes an object of words to counts per partition
+     * @param order      order of words within each partition; BY_COUNT means nonincreasing counts, ties by word
+     * @param partitions number of output files; words are assigned to them by hash, so 1 gives a globally sorted file
+     */
+    WordCountExporter(final Format format, final Order order, final int partitions) {
+        checkArgument(partitions > 0);
+        this.format = format;
+        this.order = order;
+        this.partitions = partitions;
+    }
+
+    private int partitionOf(final String word) {
+        return Math.floorMod(word.hashCode() * 0x9E3779B9, partitions);
+    }
+
+    /**
+     * @param wordCounter counts to export; must not be modified while this runs
+     * @param dir         directory for the output files
+     * @param baseName    output files are named baseName-00000.tsv etc.
+     * @return paths of the written files, in partition order
+     * @throws IOException
+     */
+    List<Path> export(final WordCounter wordCounter, final Path dir, final String baseName) throws IOException {
+        final List<Path> paths = IntStream.range(0, partitions)
+                .mapToObj(p -> dir.resolve(String.format("%s-%05d%s", baseName, p, format.extension)))
+                .collect(Collectors.toList());
+        final List<List<String>> partitionWords = order == Order.UNSORTED && partitions == 1
+                ? null : partitionWords(wordCounter);
+        try {
+            IntStream.range(0, partitions).parallel().forEach(p -> {
+                try (final Output out = new Output(paths.get(p))) {
+                    if (partitionWords == null) {
+                        writeUnsorted(wordCounter, wordCounter.getAllWords(), out);
+                    } else if (order == Order.UNSORTED) {
+                        writeUnsorted(wordCounter, partitionWords.get(p), out);
+                    } else {
+                        writeSorted(wordCounter, partitionWords.get(p).toArray(new String[0]), out);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return paths;
+    }
+
+    private List<List<String>> partitionWords(final WordCounter wordCounter) {
+        final List<List<String>> partitionWords = new ArrayList<>(partitions);
+        if (partitions == 1) {
+            partitionWords.add(new ArrayList<>(wordCounter.getAllWords()));
+        } else {
+            final Map<Integer, List<String>> grouped = wordCounter.getAllWords()
+                    .parallelStream()
+                    .collect(Collectors.groupingByConcurrent(this::partitionOf));
+            for (int p = 0; p < partitions; p++) {
+                partitionWords.add(grouped.getOrDefault(p, new ArrayList<>()));
+            }
+        }
+        return partitionWords;
+    }
+
+    private void writeUnsorted(final WordCounter wordCounter, final Collection<String> words, final Output out)
+            throws IOException {
+        out.begin();
+        for (final String word : words) {
+            out.write(word, wordCounter.getCount(word));
+        }
+        out.end();
+    }
+
+    private void writeSorted(final WordCounter wordCounter, final String[] words, final Output out) throws IOException {
+        out.begin();
+        if (order == Order.BY_WORD) {
+            Arrays.parallelSort(words);
+            for (final String word : words) {
+                out.write(word, wordCounter.getCount(word));
+            }
+        } else {
+            final int n = words.length;
+            final long[] counts = new long[n];
+            final long[] keys = new long[n];
+            IntStream.range(0, n).parallel().forEach(i -> {
+                counts[i] = wordCounter.getCount(words[i]);
+                // descending capped count in the high bits, index in the low bits
+                keys[i] = ((Integer.MAX_VALUE - Math.min(counts[i], Integer.MAX_VALUE)) << 32) | i;
+            });
+            Arrays.parallelSort(keys);
+            int start = 0;
+            if (n > 0 && keys[0] >>> 32 == 0L) {
+                // the few counts of Integer.MAX_VALUE and more are sorted by exact count
+                int end = 0;
+                while (end < n && keys[end] >>> 32 == 0L) {
+                    ++end;
+                }
+                final Integer[] capped = new Integer[end];
+                for (int i = 0; i < end; i++) {
+                    capped[i] = (int) keys[i];
+                }
+                Arrays.sort(capped, (i, j) -> counts[i] != counts[j]
+                        ? Long.compare(counts[j], counts[i]) : words[i].compareTo(words[j]));
+                for (final int i : capped) {
+                    out.write(words[i], counts[i]);
+                }
+                start = end;
+            }
+            final String[] run = new String[n];
+            while (start < n) {
+                final long count = counts[(int) keys[start]];
+                int end = start;
+                while (end < n && counts[(int) keys[end]] == count) {
+                    run[end - start] = words[(int) keys[end]];
+                    ++end;
+                }
+                Arrays.parallelSort(run, 0, end - start);
+                for (int i = 0; i < end - start; i++) {
+                    out.write(run[i], count);
+                }
+                start = end;
+            }
+        }
+        out.end();
+    }
+
+    /**
+     * Buffered, hand encoded output of entries to a FileChannel
+     */
+    private final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private boolean first = true;
+
+        Output(final Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void begin() throws IOException {
+            if (format == Format.JSON) {
+                putAscii("{");
+            }
+        }
+
+        void end() throws IOException {
+            if (format == Format.JSON) {
+                putAscii(first ? "}\n" : "\n}\n");
+            }
+        }
+
+        void write(final String word, final long count) throws IOException {
+            switch (format) {
+                case TSV:
+                    putUtf8(word);
+                    putByte('\t');
+                    break;
+                case CSV:
+                    putCsv(word);
+                    putByte(',');
+                    break;
+                case JSON:
+                    putAscii(first ? "\n" : ",\n");
+                    putJson(word);
+                    putByte(':');
+                    break;
+            }
+            putAscii(Long.toString(count));
+            if (format != Format.JSON) {
+                putByte('\n');
+            }
+            first = false;
+        }
+
+        private void putByte(final int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        private void putAscii(final String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                putByte(s.charAt(i));
+            }
+        }
+
+        private void putUtf8(final String s) throws IOException {
+            boolean ascii = true;
+            for (int i = 0; i < s.length() && ascii; i++) {
+                ascii = s.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                putAscii(s);
+            } else {
+                final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                for (final byte b : bytes) {
+                    putByte(b);
+                }
+            }
+        }
+
+        /**
+         * Tokens never contain white space, but may contain commas and quotes
+         */
+        private void putCsv(final String word) throws IOException {
+            if (word.indexOf(',') < 0 && word.indexOf('"') < 0) {
+                putUtf8(word);
+            } else {
+                putUtf8('"' + word.replace("\"", "\"\"") + '"');
+            }
+        }
+
+        private void putJson(final String word) throws IOException {
+            final StringBuilder sb = new StringBuilder(word.length() + 2).append('"');
+            for (int i = 0; i < word.length(); i++) {
+                final char ch = word.charAt(i);
+                if (ch == '"' || ch == '\\') {
+                    sb.append('\\').append(ch);
+                } else if (ch < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) ch));
+                } else {
+                    sb.append(ch);
+                }
+            }
+            putUtf8(sb.append('"').toString());
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
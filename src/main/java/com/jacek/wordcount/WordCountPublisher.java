@@ -0,0 +1,329 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Counts files in batches on a pool of threads, publishing snapshots of the progress as batches complete:
+ * counts of the words seen since the previous snapshot, and totals and the top k words so far
+ * <p>
+ * Subscription follows the contract of java.util.concurrent.Flow (not available in Java 8): a subscriber
+ * requests n snapshots, and none is sent without demand. Counting threads never wait for the subscriber:
+ * they hand completed batches to a single publishing thread, which merges them and, while there is no demand,
+ * coalesces them into the next snapshot. The last snapshot, with the complete counts, is followed by onComplete
+ * <p>
+ * Snapshots are cheap: the delta of a snapshot is the merge of the batches it covers, which the publisher
+ * never touches again, and the top k are maintained incrementally as counts only grow, so nothing is
+ * copied in proportion to the total vocabulary
+ */
+final class WordCountPublisher {
+    // a batch ends after this many bytes or files
+    private static final long BATCH_BYTES = 4L << 20;
+    private static final int BATCH_FILES = 64;
+
+    interface Subscriber {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(Snapshot snapshot);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    interface Subscription {
+        /**
+         * @param n positive number of further snapshots the subscriber is ready for
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    /**
+     * Immutable progress report; WordCounters are read only outside this package
+     */
+    static final class Snapshot {
+        private final int filesDone;
+        private final int filesTotal;
+        private final long totalCount;
+        private final int uniqueWords;
+        private final List<WordCounter.WordCount> topWords;
+        private final WordCounter delta;
+        private final WordCounter counts;
+
+        Snapshot(final int filesDone, final int filesTotal, final long totalCount, final int uniqueWords,
+                 final List<WordCounter.WordCount> topWords, final WordCounter delta, final WordCounter counts) {
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.totalCount = totalCount;
+            this.uniqueWords = uniqueWords;
+            this.topWords = topWords;
+            this.delta = delta;
+            this.counts = counts;
+        }
+
+        int getFilesDone() {
+            return filesDone;
+        }
+
+        int getFilesTotal() {
+            return filesTotal;
+        }
+
+        long getTotalCount() {
+            return totalCount;
+        }
+
+        int getUniqueWords() {
+            return uniqueWords;
+        }
+
+        /**
+         * @return the k most frequent words so far in order of nonincreasing frequency
+         */
+        List<WordCounter.WordCount> getTopWords() {
+            return topWords;
+        }
+
+        /**
+         * @return counts of words seen since the previous snapshot
+         */
+        WordCounter getDelta() {
+            return delta;
+        }
+
+        boolean isLast() {
+            return counts != null;
+        }
+
+        /**
+         * @return complete counts in the last snapshot, null in the others
+         */
+        WordCounter getCounts() {
+            return counts;
+        }
+    }
+
+    private static final class Batch {
+        private final WordCounter wordCounter;
+        private final int files;
+        private final Throwable error;
+
+        Batch(final WordCounter wordCounter, final int files, final Throwable error) {
+            this.wordCounter = wordCounter;
+            this.files = files;
+            this.error = error;
+        }
+    }
+
+    // queued by Subscription.request to wake up the publishing thread
+    private static final Batch WAKE_UP = new Batch(null, 0, null);
+
+    private final List<File> files;
+    private final long periodMillis;
+    private final int k;
+    private final int parallelism;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param files       files to count
+     * @param period      minimum time between snapshots before the last one
+     * @param k           number of most frequent words in snapshots
+     * @param parallelism number of counting threads
+     */
+    WordCountPublisher(final List<File> files, final Duration period, final int k, final int parallelism) {
+        checkArgument(!period.isNegative());
+        checkArgument(k >= 0);
+        checkArgument(parallelism > 0);
+        this.files = new ArrayList<>(files);
+        this.periodMillis = period.toMillis();
+        this.k = k;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Start counting for a subscriber; a publisher counts once, for a single subscriber
+     */
+    void subscribe(final Subscriber subscriber) {
+        checkState(subscribed.compareAndSet(false, true), "already subscribed");
+        final Job job = new Job(subscriber);
+        subscriber.onSubscribe(job);
+        final Thread thread = new Thread(job::run, "word-count-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private List<List<File>> batches() {
+        final List<List<File>> batches = new ArrayList<>();
+        List<File> batch = new ArrayList<>();
+        long bytes = 0L;
+        for (final File file : files) {
+            batch.add(file);
+            bytes += file.length();
+            if (bytes >= BATCH_BYTES || batch.size() == BATCH_FILES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                bytes = 0L;
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * State of the publishing thread, and the subscription
+     */
+    private final class Job implements Subscription {
+        private final Subscriber subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled = false;
+        private volatile Throwable requestError = null;
+        private final BlockingQueue<Batch> completed = new LinkedBlockingQueue<>();
+        // owned by the publishing thread, which sends all signals after onSubscribe
+        private final WordCounter counts = new WordCounter();
+        // total of counts, kept up to date from the deltas instead of summing counts for every snapshot
+        private long totalCount = 0L;
+        private WordCounter delta = new WordCounter();
+        private int filesDone = 0;
+        private boolean lastPublished = false;
+        private final TreeSet<WordCounter.WordCount> top = new TreeSet<>();
+        private final HashMap<String, WordCounter.WordCount> topByWord = new HashMap<>();
+
+        Job(final Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("nonpositive request " + n);
+            } else {
+                demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            completed.offer(WAKE_UP);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            completed.offer(WAKE_UP);
+        }
+
+        void run() {
+            final List<List<File>> batches = batches();
+            final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+            try {
+                for (final List<File> batch : batches) {
+                    pool.execute(() -> {
+                        try {
+                            final WordCounter wordCounter = new WordCounter();
+                            if (!cancelled) {
+                                Core.countWordsInFiles(batch, wordCounter);
+                            }
+                            completed.offer(new Batch(wordCounter, batch.size(), null));
+                        } catch (RuntimeException | Error e) {
+                            completed.offer(new Batch(null, batch.size(), e));
+                        }
+                    });
+                }
+                int remaining = batches.size();
+                long nextSnapshot = System.currentTimeMillis() + periodMillis;
+                while (!cancelled && !lastPublished) {
+                    final long wait = remaining > 0 ? Math.max(1L, nextSnapshot - System.currentTimeMillis()) : Long.MAX_VALUE;
+                    final Batch batch = completed.poll(wait, TimeUnit.MILLISECONDS);
+                    final Throwable error = batch != null && batch.error != null ? batch.error : requestError;
+                    if (error != null) {
+                        cancelled = true;
+                        subscriber.onError(error);
+                        return;
+                    }
+                    if (batch != null && batch != WAKE_UP) {
+                        // the batch counter is not used by its thread anymore, so its counters can be shared
+                        delta.mergeIn(batch.wordCounter);
+                        filesDone += batch.files;
+                        --remaining;
+                    }
+                    if (remaining == 0 && demand.get() > 0) {
+                        publish(true);
+                    } else if (remaining > 0 && System.currentTimeMillis() >= nextSnapshot && demand.get() > 0
+                            && delta.size() > 0) {
+                        publish(false);
+                        nextSnapshot = System.currentTimeMillis() + periodMillis;
+                    }
+                }
+                if (!cancelled) {
+                    subscriber.onComplete();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                cancelled = true;
+                subscriber.onError(e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        /**
+         * Fold the delta into the counts and the top k, and send a snapshot
+         */
+        private void publish(final boolean last) {
+            // counts never share Counters with deltas, which belong to snapshots
+            counts.addCounts(delta, 1);
+            totalCount += delta.getTotalCount();
+            if (k > 0) {
+                for (final String word : delta.getAllWords()) {
+                    updateTop(word, counts.getCount(word));
+                }
+            }
+            final ImmutableList.Builder<WordCounter.WordCount> topWords = ImmutableList.builder();
+            for (final Iterator<WordCounter.WordCount> it = top.descendingIterator(); it.hasNext(); ) {
+                topWords.add(it.next());
+            }
+            final Snapshot snapshot = new Snapshot(filesDone, files.size(), totalCount, counts.size(),
+                    topWords.build(), delta, last ? counts : null);
+            delta = new WordCounter();
+            demand.decrementAndGet();
+            lastPublished = last;
+            subscriber.onNext(snapshot);
+        }
+
+        /**
+         * Counts only grow, so a word enters the top k by displacing the least frequent of them
+         */
+        private void updateTop(final String word, final long count) {
+            final WordCounter.WordCount updated = new WordCounter.WordCount(word, count);
+            final WordCounter.WordCount old = topByWord.get(word);
+            if (old != null) {
+                top.remove(old);
+            } else if (top.size() == k) {
+                if (updated.compareTo(top.first()) <= 0) {
+                    return;
+                }
+                topByWord.remove(top.pollFirst().getWord());
+            }
+            top.add(updated);
+            topByWord.put(word, updated);
+        }
+    }
+}
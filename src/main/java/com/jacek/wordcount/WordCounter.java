@@ -19,9 +19,14 @@ import static com.google.common.collect.ImmutableMap.toImmutableMap;
  *
  * While the intention is to count "words" this code counts any Strings
  *
+ * Counts are 64 bit safe: a counter holds an int until its count no longer fits,
+ * and is then replaced by a counter holding a long, so only the few hottest words pay for the wider count
+ *
  * Mutable and NOT thread safe!
  */
 public final class WordCounter {
+    // rough heap footprint of one entry: hash table slot and node, Counter, String and its array of a short word
+    static final long ESTIMATED_BYTES_PER_ENTRY = 112L;
     private final HashMap<String, Counter> counterHashMap = new HashMap<>(4096);
     private long cumulativeMergeMillis = 0L;
     private int cumulativeMergeCount = 0;
@@ -30,35 +35,70 @@ public final class WordCounter {
     private int cumulativeBatchCount = 0;
 
     /**
-     * like Integer but mutable to support efficient incrementation
+     * like Integer but mutable to support efficient incrementation;
+     * 16 bytes, against 24 of a LongCounter
      */
-    private static final class Counter implements Comparable<Counter> {
+    private static class Counter implements Comparable<Counter> {
         private int value;
 
         Counter(final int value) {
             this.value = value;
         }
 
-        void increment() {
-            ++value;
+        static Counter of(final long value) {
+            return value == (int) value ? new Counter((int) value) : new LongCounter(value);
         }
 
-        void incrementBy(final Counter other) {
-            value += other.value;
+        /**
+         * @param delta number to add, possibly negative
+         * @return this, or a LongCounter to replace this if the sum does not fit an int
+         */
+        Counter add(final long delta) {
+            final long sum = value + delta;
+            if (sum == (int) sum) {
+                value = (int) sum;
+                return this;
+            } else {
+                return new LongCounter(sum);
+            }
         }
 
         @Override
         public String toString() {
-            return Integer.toString(value);
+            return Long.toString(getValue());
         }
 
-        int getValue() {
+        long getValue() {
             return value;
         }
 
         @Override
         public int compareTo(final Counter o) {
-            return Integer.compare(value, o.value);
+            return Long.compare(getValue(), o.getValue());
+        }
+    }
+
+    /**
+     * Counter promoted to a long count; its int value is pinned at Integer.MAX_VALUE,
+     * which keeps it off the fast path of countWord
+     */
+    private static final class LongCounter extends Counter {
+        private long longValue;
+
+        LongCounter(final long value) {
+            super(Integer.MAX_VALUE);
+            this.longValue = value;
+        }
+
+        @Override
+        Counter add(final long delta) {
+            longValue = Math.addExact(longValue, delta);
+            return this;
+        }
+
+        @Override
+        long getValue() {
+            return longValue;
         }
     }
 
@@ -69,11 +109,32 @@ public final class WordCounter {
      * @param word a non-null string an occurrence of which is to be counted
      */
     void countWord(@NonNull final String word) {
+        final Counter counter = counterHashMap.get(word);
+        if (counter == null) {
+            counterHashMap.put(word, new Counter(1));
+        } else if (counter.value != Integer.MAX_VALUE) {
+            // an int counter with room for one more
+            ++counter.value;
+        } else {
+            counterHashMap.put(word, counter.add(1));
+        }
+    }
+
+    /**
+     * Add a number of occurrences of a word at once
+     *
+     * @param word  a non-null string
+     * @param count positive number of occurrences
+     */
+    void countWord(@NonNull final String word, final long count) {
         final Counter counter = counterHashMap.get(word);
         if (counter != null) {
-            counter.increment();
+            final Counter updated = counter.add(count);
+            if (updated != counter) {
+                counterHashMap.put(word, updated);
+            }
         } else {
-            counterHashMap.put(word, new Counter(1));
+            counterHashMap.put(word, Counter.of(count));
         }
     }
 
@@ -83,17 +144,17 @@ public final class WordCounter {
     public static final class WordCount implements Comparable<WordCount> {
         static final Comparator<WordCount> COMPARATOR = new WordCountComparator();
         final String word;
-        final int count;
+        final long count;
 
         public String getWord() {
             return word;
         }
 
-        public int getCount() {
+        public long getCount() {
             return count;
         }
 
-        public WordCount(final String word, final int count) {
+        public WordCount(final String word, final long count) {
             checkArgument(word != null);
             checkArgument(count >= 0);
             this.word = word;
@@ -118,7 +179,7 @@ public final class WordCounter {
 
         @Override
         public int hashCode() {
-            return word.hashCode() + count;
+            return word.hashCode() + Long.hashCode(count);
         }
 
         @Override
@@ -128,7 +189,7 @@ public final class WordCounter {
 
         @Override
         public int compareTo(final WordCount o) {
-            final int delta = count - o.count;
+            final int delta = Long.compare(count, o.count);
             return delta != 0 ? delta : o.word.compareTo(word); // break ties lexicographically
         }
 
@@ -146,6 +207,17 @@ public final class WordCounter {
         ++cumulativeBatchCount;
     }
 
+    /**
+     * Accounts for merges done outside of this object, eg. of counters of another type before conversion into this
+     *
+     * @param mergeCount  number of merges
+     * @param mergeMillis their cumulative time
+     */
+    void updateMergeStats(final int mergeCount, final long mergeMillis) {
+        cumulativeMergeMillis += mergeMillis;
+        cumulativeMergeCount += mergeCount;
+    }
+
     /**
      * Modifies this object by adding another set of counts
      *
@@ -158,14 +230,28 @@ public final class WordCounter {
             final String key = entry.getKey();
             final Counter counter = counts.get(key);
             if (counter != null) {
-                counter.incrementBy(entry.getValue());
+                final Counter updated = counter.add(entry.getValue().getValue());
+                if (updated != counter) {
+                    counts.put(key, updated);
+                }
             } else {
                 counts.put(key, entry.getValue());
             }
         }
-        // update performance data
-        cumulativeMergeCount += other.cumulativeMergeCount + 1;
-        cumulativeMergeMillis += other.cumulativeMergeMillis + Duration.between(before, Instant.now()).toMillis();
+        ++cumulativeMergeCount;
+        cumulativeMergeMillis += Duration.between(before, Instant.now()).toMillis();
+        return addPerformanceData(other);
+    }
+
+    /**
+     * Modifies this object by adding the batch and merge performance data of another, but not its counts,
+     * eg. after addCounts
+     *
+     * @param other word counter whose batches and merges are accounted for by this
+     */
+    WordCounter addPerformanceData(final WordCounter other) {
+        cumulativeMergeCount += other.cumulativeMergeCount;
+        cumulativeMergeMillis += other.cumulativeMergeMillis;
 
         cumulativeBatchMillis += other.cumulativeBatchMillis;
         cumulativeBatchSize += other.cumulativeBatchSize;
@@ -174,6 +260,35 @@ public final class WordCounter {
         return this;
     }
 
+    /**
+     * Modifies this object by adding (or subtracting) another set of counts multiplied by a factor;
+     * unlike mergeIn it never shares Counters with the other word counter,
+     * which can therefore be kept and modified, or subtracted later.
+     * Words whose count drops to 0 or below are removed
+     *
+     * @param other      counts to be added to this
+     * @param multiplier factor to multiply other counts by, eg. -1 to subtract them
+     */
+    WordCounter addCounts(final WordCounter other, final int multiplier) {
+        final HashMap<String, Counter> counts = this.counterHashMap;
+        for (final Map.Entry<String, Counter> entry : other.counterHashMap.entrySet()) {
+            final String key = entry.getKey();
+            final long delta = Math.multiplyExact(multiplier, entry.getValue().getValue());
+            final Counter counter = counts.get(key);
+            if (counter != null) {
+                final Counter updated = counter.add(delta);
+                if (updated.getValue() <= 0) {
+                    counts.remove(key);
+                } else if (updated != counter) {
+                    counts.put(key, updated);
+                }
+            } else if (delta > 0) {
+                counts.put(key, Counter.of(delta));
+            }
+        }
+        return this;
+    }
+
     /**
      * @return cardinality of unique words
      */
@@ -181,6 +296,13 @@ public final class WordCounter {
         return counterHashMap.size();
     }
 
+    /**
+     * @return estimated heap size of this word counter in bytes, proportional to its size; cheap
+     */
+    long estimatedMemory() {
+        return counterHashMap.size() * ESTIMATED_BYTES_PER_ENTRY;
+    }
+
     /**
      * @return set of all words counted
      */
@@ -190,22 +312,34 @@ public final class WordCounter {
 
     /**
      * @param word non-null string
-     * @return primitive non-negative int representing the number of times the argument was counted
+     * @return primitive non-negative long representing the number of times the argument was counted
      */
-    public int getCount(@NonNull final String word) {
+    public long getCount(@NonNull final String word) {
         final Counter counter = counterHashMap.get(word);
         return counter != null ? counter.getValue() : 0;
     }
 
     /**
-     * @return ImmutableMap from words to their counts as Integers
+     * @return ImmutableMap from words to their counts as Longs
      */
-    public ImmutableMap<String, Integer> toMap() {
+    public ImmutableMap<String, Long> toMap() {
         return counterHashMap.entrySet()
                 .stream()
                 .collect(toImmutableMap(Map.Entry::getKey, e -> e.getValue().getValue()));
     }
 
+    /**
+     * Same as toMap but entries are collected by a parallel stream over the hash table;
+     * the word counter must not be modified while this runs
+     *
+     * @return ImmutableMap from words to their counts as Longs
+     */
+    public ImmutableMap<String, Long> toMapInParallel() {
+        return counterHashMap.entrySet()
+                .parallelStream()
+                .collect(toImmutableMap(Map.Entry::getKey, e -> e.getValue().getValue()));
+    }
+
     /**
      * @return the total number of all occurrences of all words ever counted or merged in
      */
@@ -217,6 +351,13 @@ public final class WordCounter {
         return total;
     }
 
+    /**
+     * @return the total number of all occurrences of all words, summed in parallel
+     */
+    public long getTotalCountInParallel() {
+        return counterHashMap.values().parallelStream().mapToLong(Counter::getValue).sum();
+    }
+
     /**
      * This function is rather expensive to run; it is intended to run once
      * An alternative implementation would continually update eg. a heap of counters
@@ -230,14 +371,82 @@ public final class WordCounter {
         return getWordCountStream().collect(Comparators.greatest(k, WordCount.COMPARATOR));
     }
 
+    /**
+     * Parallel version of topWords: every chunk of the hash table (as split by its spliterator)
+     * selects its own k best, and these partial results are merged at the end
+     *
+     * @param k nonnegative number of words of highest frequency in order of nonincreasing frequency
+     * @return List of immutable WordCounts of highest frequency in order of nonincreasing frequency
+     */
+    public List<WordCount> topWordsInParallel(final int k) {
+        checkArgument(k >= 0, "Argument was %s but expected nonnegative", k);
+        return getParallelWordCountStream().collect(Comparators.greatest(k, WordCount.COMPARATOR));
+    }
+
+    /**
+     * Serial version of topWords selecting with a bounded heap rather than a stream collector,
+     * for short jobs in a cold JVM: it loads no stream, lambda or Guava collection classes
+     *
+     * @param k nonnegative number of words of highest frequency in order of nonincreasing frequency
+     * @return List of immutable WordCounts of highest frequency in order of nonincreasing frequency
+     */
+    List<WordCount> topWordsWithHeap(final int k) {
+        checkArgument(k >= 0, "Argument was %s but expected nonnegative", k);
+        final PriorityQueue<WordCount> heap = new PriorityQueue<>(Math.min(k, size()) + 1);
+        for (final Map.Entry<String, Counter> entry : counterHashMap.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(WordCount.fromEntry(entry));
+            } else if (k > 0 && entry.getValue().getValue() >= heap.peek().count) {
+                // ties are broken by word, so compare in full only when counts tie or beat the least
+                final WordCount wordCount = WordCount.fromEntry(entry);
+                if (wordCount.compareTo(heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(wordCount);
+                }
+            }
+        }
+        final List<WordCount> top = new ArrayList<>(heap);
+        top.sort(Collections.reverseOrder());
+        return top;
+    }
+
     public Stream<WordCount> getWordCountStream() {
         return counterHashMap.entrySet().stream().map(WordCount::fromEntry);
     }
 
+    /**
+     * @return parallel stream of WordCounts; the word counter must not be modified while the stream is consumed
+     */
+    public Stream<WordCount> getParallelWordCountStream() {
+        return counterHashMap.entrySet().parallelStream().map(WordCount::fromEntry);
+    }
+
+    /**
+     * @return milliseconds spent merging into this word counter and the counters merged into it
+     */
+    long getCumulativeMergeMillis() {
+        return cumulativeMergeMillis;
+    }
+
+    /**
+     * @return milliseconds spent counting batches of files by this word counter and the counters merged into it
+     */
+    long getCumulativeBatchMillis() {
+        return cumulativeBatchMillis;
+    }
+
+    /**
+     * @return number of batches of files counted by this word counter and the counters merged into it
+     */
+    int getCumulativeBatchCount() {
+        return cumulativeBatchCount;
+    }
+
     public String getPerformanceDataAsString() {
-        return String.format("%d total batch size\n%d batches in %d milliseconds, (%.2f msec/batch)\n%d merges in %d milliseconds, (%.2f msec/merge)",
+        return String.format("%d total batch size\n%d batches in %d milliseconds, (%.2f msec/batch, %.1f files/batch)\n%d merges in %d milliseconds, (%.2f msec/merge)",
                 cumulativeBatchSize,
                 cumulativeBatchCount, cumulativeBatchMillis, (double) cumulativeBatchMillis / cumulativeBatchCount,
+                (double) cumulativeBatchSize / cumulativeBatchCount,
                 cumulativeMergeCount, cumulativeMergeMillis, (double) cumulativeMergeMillis / cumulativeMergeCount
         );
     }
@@ -1,7 +1,12 @@
 package com.jacek.wordcount;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Abstracted interface to various parallel and single threaded implementations of word counting
@@ -17,4 +22,32 @@ public interface WordCountingService {
      * @throws Exception
      */
     WordCounter countWords(final List<File> files) throws Exception;
+
+    /**
+     * Tokenize a batch of text files, each counted as if it occurred multiplicity times
+     * The default runs countWords once per distinct multiplicity; implementations should count all files in one run
+     *
+     * @param files          a batch of files to process
+     * @param multiplicities positive number of times each file is counted, aligned with files
+     * @return counts of unique words
+     * @throws Exception
+     */
+    default WordCounter countWords(final List<File> files, final int[] multiplicities) throws Exception {
+        checkArgument(multiplicities.length == files.size());
+        final Map<Integer, List<File>> batches = new TreeMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            checkArgument(multiplicities[i] > 0);
+            batches.computeIfAbsent(multiplicities[i], m -> new ArrayList<>()).add(files.get(i));
+        }
+        final WordCounter wordCounter = new WordCounter();
+        for (final Map.Entry<Integer, List<File>> batch : batches.entrySet()) {
+            final WordCounter batchCounter = countWords(batch.getValue());
+            if (batch.getKey() == 1) {
+                wordCounter.mergeIn(batchCounter);
+            } else {
+                wordCounter.addCounts(batchCounter, batch.getKey()).addPerformanceData(batchCounter);
+            }
+        }
+        return wordCounter;
+    }
 }
@@ -0,0 +1,72 @@
+package com.jacek.wordcount;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Thread safe dictionary assigning dense int ids (0, 1, 2, ...) to words on first sight
+ * <p>
+ * Lookups of known words are lock free; only assignment of a new id takes a lock,
+ * which is rare compared to the number of tokens
+ */
+public final class WordDictionary {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>(4096);
+    // words indexed by id; replaced by a larger copy when full
+    private volatile String[] words = new String[4096];
+    private volatile int size = 0;
+
+    /**
+     * @param word non-null string
+     * @return id of the word, assigning the next unused id if the word was not seen before
+     */
+    public int idOf(@NonNull final String word) {
+        final Integer id = ids.get(word);
+        return id != null ? id : assignId(word);
+    }
+
+    private synchronized int assignId(final String word) {
+        final Integer id = ids.get(word);
+        if (id != null) {   // assigned by another thread in the meantime
+            return id;
+        } else {
+            final int newId = size;
+            if (newId == words.length) {
+                words = Arrays.copyOf(words, 2 * newId);
+            }
+            words[newId] = word;
+            size = newId + 1;
+            // publish the id only after the word is in place
+            ids.put(word, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * @param word non-null string
+     * @return id of the word or -1 if the word has no id
+     */
+    public int lookup(@NonNull final String word) {
+        final Integer id = ids.get(word);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id an id returned by idOf
+     * @return the word with that id
+     */
+    public String word(final int id) {
+        checkElementIndex(id, size);
+        return words[id];
+    }
+
+    /**
+     * @return number of words, which is also the next id to be assigned
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,152 @@
+package com.jacek.wordcount;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures bytes allocated, GC count and GC time of an action, using HotSpot's per thread allocation counters
+ * <p>
+ * Allocation of the calling thread is exact. Allocation of other threads, eg. of pools started by the action,
+ * is sampled every millisecond while the action runs, so that of threads terminating between samples is partly missed
+ */
+final class AllocationProbe {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    interface Action {
+        void run() throws Exception;
+    }
+
+    static final class Result {
+        final long allocatedBytes;
+        final long gcCount;
+        final long gcMillis;
+        final long nanos;
+
+        Result(final long allocatedBytes, final long gcCount, final long gcMillis, final long nanos) {
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.nanos = nanos;
+        }
+
+        double bytesPer(final long n) {
+            return (double) allocatedBytes / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes allocated, %d GCs in %d ms, %d ms", allocatedBytes, gcCount, gcMillis, nanos / 1_000_000);
+        }
+    }
+
+    static boolean isSupported() {
+        return THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * @param action     to measure
+     * @param allThreads whether to sample allocation of all threads, or only measure the calling thread
+     */
+    static Result measure(final Action action, final boolean allThreads) throws Exception {
+        final Sampler sampler = allThreads ? new Sampler() : null;
+        final long gcCountBefore = gcCount();
+        final long gcMillisBefore = gcMillis();
+        final long self = Thread.currentThread().getId();
+        final long selfBefore = THREADS.getThreadAllocatedBytes(self);
+        final long before = System.nanoTime();
+        if (sampler != null) {
+            sampler.start();
+        }
+        try {
+            action.run();
+        } finally {
+            if (sampler != null) {
+                sampler.stop();
+            }
+        }
+        final long nanos = System.nanoTime() - before;
+        final long selfBytes = THREADS.getThreadAllocatedBytes(self) - selfBefore;
+        final long otherBytes = sampler != null ? sampler.allocatedBytes(self) : 0L;
+        return new Result(selfBytes + otherBytes, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore, nanos);
+    }
+
+    private static long gcCount() {
+        long count = 0L;
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0L;
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0L, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Polls allocated bytes of all threads, remembering the first and last value seen per thread
+     */
+    private static final class Sampler implements Runnable {
+        private final Map<Long, Long> first = new HashMap<>();
+        private final Map<Long, Long> last = new HashMap<>();
+        private final Thread thread = new Thread(this, "allocation-sampler");
+        private volatile boolean running = true;
+
+        Sampler() {
+            thread.setDaemon(true);
+            // threads alive before the action count from their current value, later ones from 0
+            sample(first);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+            sample(last);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample(last);
+                try {
+                    Thread.sleep(1L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample(final Map<Long, Long> into) {
+            final long[] ids = THREADS.getAllThreadIds();
+            final long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+            synchronized (this) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (bytes[i] >= 0) {
+                        into.merge(ids[i], bytes[i], Math::max);
+                    }
+                }
+            }
+        }
+
+        synchronized long allocatedBytes(final long excludedThread) {
+            long total = 0L;
+            for (final Map.Entry<Long, Long> entry : last.entrySet()) {
+                final long id = entry.getKey();
+                if (id != excludedThread && id != thread.getId()) {
+                    total += entry.getValue() - first.getOrDefault(id, 0L);
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static com.google.common.io.Resources.getResource;
+
+/**
+ * Bytes allocated per token and per file, and GC activity, of tokenizers and word counting services
+ * <p>
+ * Single threaded paths are measured exactly and fail the test when allocation per token exceeds
+ * the baseline in allocation-baseline.properties by more than TOLERANCE; services running pools are sampled
+ * and only reported. Baselines are measured after warm up, so a regression means more garbage per token
+ * in steady state, eg. a boxed count or a defensive copy in the tokenizer loop
+ */
+public final class AllocationRegressionTest {
+    private static final double TOLERANCE = 1.25;
+    private static final int WARM_UP = 3;
+    private static final int REPS = 3;
+
+    private static List<File> corpus() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            files.add(i % 2 == 0 ? txtFile1 : txtFile2);
+        }
+        return files;
+    }
+
+    /**
+     * @return least of REPS measurements after warm up, as JIT compilation removes some allocation
+     */
+    private static AllocationProbe.Result measure(final AllocationProbe.Action action, final boolean allThreads) throws Exception {
+        for (int i = 0; i < WARM_UP; i++) {
+            action.run();
+        }
+        AllocationProbe.Result best = null;
+        for (int i = 0; i < REPS; i++) {
+            final AllocationProbe.Result result = AllocationProbe.measure(action, allThreads);
+            if (best == null || result.allocatedBytes < best.allocatedBytes) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    private static double report(final String name, final AllocationProbe.Result result, final long tokens, final int files) {
+        final double perToken = result.bytesPer(tokens);
+        System.out.println(String.format("%-24s %8.1f bytes/token %10.0f bytes/file  %s",
+                name, perToken, result.bytesPer(files), result));
+        return perToken;
+    }
+
+    private static void check(final Properties baseline, final String name, final double perToken) {
+        final String value = baseline.getProperty(name);
+        Assert.assertNotNull("no baseline for " + name, value);
+        final double limit = Double.parseDouble(value) * TOLERANCE;
+        Assert.assertTrue(String.format("%s allocates %.1f bytes/token, baseline %s", name, perToken, value),
+                perToken <= limit);
+    }
+
+    @Test
+    public void allocationPerToken() throws Exception {
+        Assume.assumeTrue(AllocationProbe.isSupported());
+        final Properties baseline = new Properties();
+        try (final InputStream in = getResource("allocation-baseline.properties").openStream()) {
+            baseline.load(in);
+        }
+        final List<File> files = corpus();
+        final long tokens = new SerialWordCounting().countWords(files).getTotalCount();
+
+        final double chunked = report("tokenizer.chunked", measure(
+                () -> Core.countWordsInFiles(files, new WordCounter()), false), tokens, files.size());
+        final double lines = report("tokenizer.lines", measure(() -> {
+            final WordCounter wordCounter = new WordCounter();
+            for (final File file : files) {
+                try (final FileReader reader = new FileReader(file)) {
+                    Core.countWordsFromReader(reader, wordCounter);
+                }
+            }
+        }, false), tokens, files.size());
+        final double dictionary = report("tokenizer.dictionary", measure(
+                () -> Core.countWordsInFiles(files, new IdWordCounter(new WordDictionary())), false), tokens, files.size());
+        final double serial = report("service.serial", measure(
+                () -> new SerialWordCounting().countWords(files), false), tokens, files.size());
+
+        report("service.simpleParallel", measure(
+                () -> new SimpleParallelWordCounting(2).countWords(files), true), tokens, files.size());
+        report("service.forkJoin", measure(
+                () -> new ForkJoinWordCounting(1).countWords(files), true), tokens, files.size());
+        report("service.forkJoinAdaptive", measure(
+                () -> new ForkJoinWordCounting().countWords(files), true), tokens, files.size());
+        report("service.dictionary", measure(
+                () -> new DictionaryWordCounting(1).countWords(files), true), tokens, files.size());
+        report("service.stream", measure(
+                () -> new StreamWordCounting(2).countWords(files), true), tokens, files.size());
+
+        check(baseline, "tokenizer.chunked", chunked);
+        check(baseline, "tokenizer.lines", lines);
+        check(baseline, "tokenizer.dictionary", dictionary);
+        check(baseline, "service.serial", serial);
+    }
+}
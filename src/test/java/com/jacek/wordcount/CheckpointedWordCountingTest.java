@@ -0,0 +1,143 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class CheckpointedWordCountingTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private List<File> newFiles(final int n) throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            final File file = tmpFolder.newFile(i + ".txt");
+            Files.write(file.toPath(), ("word" + i + " common, Common " + i % 3).getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        return files;
+    }
+
+    @Test
+    public void checkpointsCompletedRun() throws Exception {
+        final List<File> files = new ArrayList<>(newFiles(100));
+        files.add(TestUtils.resourceFile("rt-mutex-design.txt"));
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final Path path = tmpFolder.getRoot().toPath().resolve("run.ckpt");
+
+        final WordCounter wordCounter = new CheckpointedWordCounting(path, 0L, 3, TokenFilter.NONE).countWords(files);
+        Assert.assertEquals(wordCounter.toMap(), expected.toMap());
+        final CheckpointedWordCounting.Checkpoint checkpoint = CheckpointedWordCounting.read(path);
+        Assert.assertEquals(checkpoint.fileCount, 101);
+        Assert.assertEquals(checkpoint.completed.cardinality(), 101);
+        Assert.assertEquals(checkpoint.wordCounts.stream().collect(Collectors.toMap(WordCounter.WordCount::getWord,
+                WordCounter.WordCount::getCount)), expected.toMap());
+        Assert.assertFalse(Files.exists(path.resolveSibling("run.ckpt.tmp")));
+
+        // counting the same files again, in another order, reads the checkpoint
+        Collections.reverse(files);
+        Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 3, TokenFilter.NONE).countWords(files).toMap(),
+                expected.toMap());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        final List<File> files = newFiles(10);
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final List<File> sorted = CheckpointedWordCounting.sorted(files);
+        // a run which died after counting 4 files, with a marker word to tell its counts were restored
+        final BitSet completed = new BitSet();
+        completed.set(0, 4);
+        final WordCounter counted = new SerialWordCounting().countWords(sorted.subList(0, 4));
+        counted.countWord("restored");
+        final Path path = tmpFolder.getRoot().toPath().resolve("resumed.ckpt");
+        CheckpointedWordCounting.write(path, new CheckpointedWordCounting.Checkpoint(
+                CheckpointedWordCounting.fingerprint(sorted, null, TokenFilter.NONE), 10, completed,
+                counted.getWordCountStream().collect(Collectors.toList())));
+
+        final WordCounter wordCounter = new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files);
+        expected.countWord("restored");
+        Assert.assertEquals(wordCounter.toMap(), expected.toMap());
+        Assert.assertEquals(CheckpointedWordCounting.read(path).completed.cardinality(), 10);
+    }
+
+    @Test
+    public void countsChangedFilesAgain() throws Exception {
+        final List<File> files = newFiles(10);
+        final Path path = tmpFolder.getRoot().toPath().resolve("changed.ckpt");
+        new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files);
+
+        // same size, other content and modification time
+        Files.write(files.get(3).toPath(), "other common, Common 0".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(files.get(3).setLastModified(files.get(3).lastModified() - 10_000L));
+        Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files).toMap(),
+                new SerialWordCounting().countWords(files).toMap());
+        // longer
+        Files.write(files.get(5).toPath(), "changed and longer".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files).toMap(),
+                new SerialWordCounting().countWords(files).toMap());
+    }
+
+    @Test
+    public void countsAgainWithAnotherFilter() throws Exception {
+        final List<File> files = newFiles(10);
+        final Path path = tmpFolder.getRoot().toPath().resolve("filter.ckpt");
+        new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files);
+
+        for (final TokenFilter tokenFilter : new TokenFilter[]{
+                new TokenFilter(Collections.singletonList("common"), 1, Integer.MAX_VALUE, false),
+                new TokenFilter(Collections.emptyList(), 2, Integer.MAX_VALUE, false),
+                new TokenFilter(Collections.emptyList(), 1, 5, false),
+                new TokenFilter(Collections.emptyList(), 1, Integer.MAX_VALUE, true)}) {
+            Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 2, tokenFilter).countWords(files).toMap(),
+                    new SerialWordCounting(tokenFilter).countWords(files).toMap());
+        }
+        // the same stop words in another order and case make the same filter
+        Assert.assertEquals(new TokenFilter(Arrays.asList("word1", "Common"), 1, 10, false).digest(),
+                new TokenFilter(Arrays.asList("common", "word1"), 1, 10, false).digest());
+    }
+
+    @Test
+    public void checkpointsDeduplicatedRun() throws Exception {
+        final List<File> files = new ArrayList<>(newFiles(5));
+        files.addAll(files.subList(1, 3));
+        files.add(files.get(1));
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final Path path = tmpFolder.getRoot().toPath().resolve("dedup.ckpt");
+
+        final DeduplicatingWordCounting dedup = new DeduplicatingWordCounting(
+                new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE));
+        Assert.assertEquals(dedup.countWords(files).toMap(), expected.toMap());
+        Assert.assertEquals(CheckpointedWordCounting.read(path).fileCount, 5);
+        Assert.assertEquals(dedup.countWords(files).toMap(), expected.toMap());
+        // a checkpoint of the unique files, counted once each, is not one of the deduplicated run
+        Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files.subList(0, 5))
+                .toMap(), new SerialWordCounting().countWords(files.subList(0, 5)).toMap());
+    }
+
+    @Test
+    public void ignoresCheckpointOfOtherFilesAndGarbage() throws Exception {
+        final List<File> files = newFiles(6);
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final Path path = tmpFolder.getRoot().toPath().resolve("other.ckpt");
+        new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files.subList(0, 3));
+
+        Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files).toMap(),
+                expected.toMap());
+        Files.write(path, "not a checkpoint".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(new CheckpointedWordCounting(path, 0L, 2, TokenFilter.NONE).countWords(files).toMap(),
+                expected.toMap());
+    }
+}
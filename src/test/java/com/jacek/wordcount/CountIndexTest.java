@@ -0,0 +1,88 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class CountIndexTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static List<String> words(final List<WordCounter.WordCount> wordCounts) {
+        return wordCounts.stream().map(WordCounter.WordCount::getWord).collect(Collectors.toList());
+    }
+
+    @Test
+    public void lookups() throws Exception {
+        final WordCounter wc = new WordCounter();
+        for (String word : Arrays.asList("kmalloc", "kmalloc", "kmalloc_node", "kfree", "kmallocs", "a", "zzz", "\u017c\u00f3\u0142w", "kmalloc")) {
+            wc.countWord(word);
+        }
+        final Path path = tmpFolder.newFile("counts.idx").toPath();
+        CountIndex.write(wc, path);
+        final CountIndex index = CountIndex.open(path);
+
+        Assert.assertEquals(index.size(), wc.size());
+        for (String word : wc.getAllWords()) {
+            Assert.assertEquals(index.getCount(word), wc.getCount(word));
+        }
+        Assert.assertEquals(index.getCount("kmall"), 0);
+        Assert.assertEquals(index.getCount("0"), 0);
+        Assert.assertEquals(index.getCount("~"), 0);
+
+        Assert.assertEquals(words(index.withPrefix("kmalloc").collect(Collectors.toList())),
+                Arrays.asList("kmalloc", "kmalloc_node", "kmallocs"));
+        Assert.assertEquals(index.withPrefix("kmalloc").findFirst().get(), new WordCounter.WordCount("kmalloc", 3));
+        Assert.assertEquals(index.withPrefix("x").count(), 0);
+        Assert.assertEquals(index.withPrefix("").count(), wc.size());
+
+        Assert.assertEquals(words(index.range("b", "kmalloc_").collect(Collectors.toList())),
+                Arrays.asList("kfree", "kmalloc"));
+        Assert.assertEquals(words(index.range("zzz", "\uffff").collect(Collectors.toList())),
+                Arrays.asList("zzz", "\u017c\u00f3\u0142w"));
+        Assert.assertEquals(index.range("z", "a").count(), 0);
+    }
+
+    @Test
+    public void emptyIndex() throws Exception {
+        final File file = tmpFolder.newFile("empty.idx");
+        CountIndex.write(new WordCounter(), file.toPath());
+        final CountIndex index = CountIndex.open(file.toPath());
+        Assert.assertEquals(index.size(), 0);
+        Assert.assertEquals(index.getCount("a"), 0);
+        Assert.assertEquals(index.withPrefix("a").collect(Collectors.toList()), Collections.emptyList());
+    }
+
+    @Test
+    public void fileCounts() throws Exception {
+        final WordCounter wc = new SerialWordCounting().countWords(Arrays.asList(
+                TestUtils.resourceFile("rt-mutex-design.txt"),
+                TestUtils.resourceFile("xfs-delayed-logging-design.txt")));
+        final Path path = tmpFolder.newFile("docs.idx").toPath();
+        CountIndex.write(wc, path);
+        final CountIndex index = CountIndex.open(path);
+        Assert.assertEquals(index.getCount("process"), 73);
+        Assert.assertEquals(index.withPrefix("").collect(Collectors.toSet()),
+                wc.getWordCountStream().collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void countsBeyondInt() throws Exception {
+        final WordCounter wordCounter = new WordCounter();
+        wordCounter.countWord("the", 5_000_000_000L);
+        wordCounter.countWord("a", 7L);
+        final Path path = tmpFolder.newFile("big.idx").toPath();
+        CountIndex.write(wordCounter, path);
+        final CountIndex index = CountIndex.open(path);
+        Assert.assertEquals(index.getCount("the"), 5_000_000_000L);
+        Assert.assertEquals(index.getCount("a"), 7L);
+    }
+}
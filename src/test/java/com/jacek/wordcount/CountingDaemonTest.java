@@ -0,0 +1,154 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class CountingDaemonTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File copyOf(final String resource, final File dir) throws Exception {
+        final File copy = new File(dir, resource);
+        Files.copy(TestUtils.resourceFile(resource), copy);
+        return copy;
+    }
+
+    @Test
+    public void cachedPartials() throws Exception {
+        final File dir1 = tmpFolder.newFolder("a");
+        final File dir2 = tmpFolder.newFolder("b");
+        final File file1 = copyOf("rt-mutex-design.txt", dir1);
+        final File file2 = copyOf("xfs-delayed-logging-design.txt", dir2);
+        final WordCounter expected = new SerialWordCounting().countWords(ImmutableList.of(file1, file2));
+        final WordCounter expected1 = new SerialWordCounting().countWords(ImmutableList.of(file1));
+
+        try (final CountingDaemon daemon = new CountingDaemon(64L << 20)) {
+            final CountingDaemon.Result first = daemon.count(ImmutableList.of(dir1.toPath()));
+            Assert.assertEquals(first.hits, 0);
+            Assert.assertEquals(first.wordCounter.toMap(), expected1.toMap());
+
+            final CountingDaemon.Result second = daemon.count(ImmutableList.of(file1.toPath(), dir2.toPath()));
+            Assert.assertEquals(second.files, 2);
+            Assert.assertEquals(second.hits, 1);
+            Assert.assertEquals(second.wordCounter.toMap(), expected.toMap());
+            // cached counters are not modified by merging
+            Assert.assertEquals(daemon.count(ImmutableList.of(file1.toPath())).wordCounter.toMap(), expected1.toMap());
+
+            // a modified file is counted again
+            java.nio.file.Files.write(file1.toPath(), " extra".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            final CountingDaemon.Result modified = daemon.count(ImmutableList.of(file1.toPath()));
+            Assert.assertEquals(modified.hits, 0);
+            Assert.assertEquals(modified.wordCounter.getCount("extra"), 1L);
+            Assert.assertEquals(daemon.getHits(), 2L);
+            Assert.assertEquals(daemon.getMisses(), 3L);
+            Assert.assertEquals(daemon.getCachedFiles(), 2);
+            Assert.assertTrue(daemon.getCacheBytes() > 0);
+        }
+    }
+
+    @Test
+    public void evictsToBudget() throws Exception {
+        final File dir = tmpFolder.newFolder("c");
+        final File file1 = copyOf("rt-mutex-design.txt", dir);
+        final File file2 = copyOf("xfs-delayed-logging-design.txt", dir);
+        final long budget = new SerialWordCounting().countWords(ImmutableList.of(file2)).estimatedMemory() + 1024L;
+        try (final CountingDaemon daemon = new CountingDaemon(budget)) {
+            daemon.count(ImmutableList.of(file1.toPath()));
+            daemon.count(ImmutableList.of(file2.toPath()));
+            Assert.assertTrue(daemon.getCacheBytes() <= budget);
+            Assert.assertEquals(daemon.getCachedFiles(), 1);
+            Assert.assertEquals(daemon.count(ImmutableList.of(file2.toPath())).hits, 1);
+        }
+    }
+
+    private static List<String> request(final BufferedReader in, final Writer out, final String request) throws Exception {
+        out.write(request + "\n");
+        out.flush();
+        final List<String> lines = new ArrayList<>();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private File tokenFile(final String token, final String permissions) throws Exception {
+        final File file = tmpFolder.newFile();
+        java.nio.file.Files.write(file.toPath(), (token + "\n").getBytes(StandardCharsets.UTF_8));
+        java.nio.file.Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString(permissions));
+        return file;
+    }
+
+    @Test
+    public void socketProtocol() throws Exception {
+        final File dir = tmpFolder.newFolder("d");
+        final File file = copyOf("rt-mutex-design.txt", dir);
+        final WordCounter expected = new SerialWordCounting().countWords(ImmutableList.of(file));
+        try (final CountingDaemon daemon = new CountingDaemon(64L << 20);
+             final Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                     daemon.start(0, tokenFile("s3cret", "rw-------").toPath()));
+             final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             final Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            Assert.assertEquals(request(in, out, "AUTH\ts3cret"), ImmutableList.of("OK"));
+            final List<String> answer = request(in, out, "COUNT\t3\t" + dir.getPath());
+            Assert.assertEquals(answer.get(0),
+                    String.format("OK\t1\t0\t1\t%d\t%d", expected.getTotalCount(), expected.size()));
+            Assert.assertEquals(answer.size(), 4);
+            final WordCounter.WordCount top = expected.topWords(1).get(0);
+            Assert.assertEquals(answer.get(1), top.getWord() + "\t" + top.getCount());
+
+            Assert.assertEquals(request(in, out, "COUNT\t1\t" + file.getPath()).get(0).split("\t")[2], "1");
+            Assert.assertTrue(request(in, out, "STATS").get(0).startsWith("OK\t1\t1\t0.500\t1\t"));
+            Assert.assertTrue(request(in, out, "HELLO").get(0).startsWith("ERR"));
+            Assert.assertEquals(request(in, out, "COUNT\tmany"),
+                    ImmutableList.of("ERR\tNumberFormatException: For input string: \"many\""));
+        }
+    }
+
+    @Test
+    public void rejectsConnectionWithoutToken() throws Exception {
+        try (final CountingDaemon daemon = new CountingDaemon(64L << 20)) {
+            final int port = daemon.start(0, tokenFile("s3cret", "r--------").toPath());
+            for (final String first : ImmutableList.of("STATS", "AUTH\ts3cre", "AUTH\ts3cret2")) {
+                try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                     final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                     final Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                    Assert.assertEquals(request(in, out, first), ImmutableList.of("ERR\tunauthorized"));
+                    // closed
+                    Assert.assertNull(in.readLine());
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokenFileReadableByOthers() throws Exception {
+        try (final CountingDaemon daemon = new CountingDaemon(64L << 20)) {
+            daemon.start(0, tokenFile("s3cret", "rw-r--r--").toPath());
+        }
+    }
+
+    @Test
+    public void errorMessageIsOneLine() {
+        Assert.assertEquals(CountingDaemon.errorMessage(new IllegalStateException("two\nlines\tand a tab")),
+                "IllegalStateException: two lines and a tab");
+        Assert.assertEquals(CountingDaemon.errorMessage(new NullPointerException()), "NullPointerException");
+        Assert.assertEquals(CountingDaemon.errorMessage(new RuntimeException(new String(new char[1000]))).length(), 203);
+    }
+}
@@ -0,0 +1,76 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class DeduplicationTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void duplicatesCountedWithMultiplicity() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final File copy1 = tmpFolder.newFile("copy1.txt");
+        final File copy2 = tmpFolder.newFile("copy2.txt");
+        Files.copy(txtFile1.toPath(), copy1.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(txtFile1.toPath(), copy2.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        // same size as txtFile1, different content in the middle
+        final byte[] bytes = Files.readAllBytes(txtFile1.toPath());
+        bytes[bytes.length / 2 + 10] = 'X';
+        final File modified = tmpFolder.newFile("modified.txt");
+        Files.write(modified.toPath(), bytes);
+
+        final ImmutableList<File> files = ImmutableList.of(txtFile1, copy1, txtFile2, copy2, modified, txtFile2);
+        final Map<File, Integer> unique = DeduplicatingWordCounting.uniqueContents(files);
+        Assert.assertEquals(unique.size(), 3);
+        Assert.assertEquals(unique.values().stream().mapToInt(Integer::intValue).sum(), files.size());
+
+        final DeduplicatingWordCounting dedup = new DeduplicatingWordCounting(new ForkJoinWordCounting(1));
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final WordCounter wordCounter = dedup.countWords(files);
+        Assert.assertEquals(expected.toMap(), wordCounter.toMap());
+        Assert.assertEquals(dedup.getSkippedFiles(), 3);
+        Assert.assertEquals(dedup.getSkippedBytes(), 2 * txtFile1.length() + txtFile2.length());
+
+        // unique files are counted in one run of the delegate, or one per multiplicity by the default
+        final AtomicInteger runs = new AtomicInteger();
+        final ForkJoinWordCounting forkJoin = new ForkJoinWordCounting(1);
+        final WordCounter once = new DeduplicatingWordCounting(new WordCountingService() {
+            @Override
+            public WordCounter countWords(final List<File> files) {
+                runs.incrementAndGet();
+                return forkJoin.countWords(files);
+            }
+
+            @Override
+            public WordCounter countWords(final List<File> files, final int[] multiplicities) {
+                runs.incrementAndGet();
+                return forkJoin.countWords(files, multiplicities);
+            }
+        }).countWords(files);
+        Assert.assertEquals(once.toMap(), expected.toMap());
+        Assert.assertEquals(runs.get(), 1);
+        final WordCounter fallback = new DeduplicatingWordCounting(forkJoin::countWords).countWords(files);
+        Assert.assertEquals(fallback.toMap(), expected.toMap());
+        // with the batch stats of every run
+        Assert.assertTrue(fallback.getPerformanceDataAsString().startsWith("3 total batch size"));
+    }
+
+    @Test
+    public void missingFileIsNotADuplicate() throws Exception {
+        final File txtFile = TestUtils.resourceFile("singletoken.txt");
+        final ImmutableList<File> files = ImmutableList.of(txtFile, new File("not-there"), new File("not-there-either"));
+        Assert.assertEquals(DeduplicatingWordCounting.uniqueContents(files).size(), 3);
+    }
+}
@@ -0,0 +1,75 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public final class DictionaryWordCountTest {
+    @Test
+    public void dictionaryIds() {
+        final WordDictionary dictionary = new WordDictionary();
+        Assert.assertEquals(dictionary.lookup("a"), -1);
+        Assert.assertEquals(dictionary.idOf("a"), 0);
+        Assert.assertEquals(dictionary.idOf("b"), 1);
+        Assert.assertEquals(dictionary.idOf("a"), 0);
+        Assert.assertEquals(dictionary.lookup("b"), 1);
+        Assert.assertEquals(dictionary.word(1), "b");
+        Assert.assertEquals(dictionary.size(), 2);
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertEquals(dictionary.word(dictionary.idOf("w" + i)), "w" + i);
+        }
+        Assert.assertEquals(dictionary.size(), 10_002);
+    }
+
+    @Test
+    public void mergeArrays() {
+        final WordDictionary dictionary = new WordDictionary();
+        final IdWordCounter c1 = new IdWordCounter(dictionary);
+        final IdWordCounter c2 = new IdWordCounter(dictionary);
+        c1.countWord("a");
+        c1.countWord("b");
+        for (int i = 0; i < 5000; i++) {
+            c2.countWord("w" + i);   // grows c2's table beyond c1's
+        }
+        c2.countWord("a");
+        c1.mergeIn(c2);
+        Assert.assertEquals(c1.getCount("a"), 2);
+        Assert.assertEquals(c1.getCount("b"), 1);
+        Assert.assertEquals(c1.getCount("w4999"), 1);
+        Assert.assertEquals(c1.getCount("x"), 0);
+        Assert.assertEquals(c1.size(), 5002);
+        Assert.assertEquals(c1.getTotalCount(), 5003);
+        Assert.assertEquals(c1.addTo(new WordCounter()).getCount("a"), 2);
+    }
+
+    @Test
+    public void countsBeyondInt() {
+        final WordDictionary dictionary = new WordDictionary();
+        final IdWordCounter c1 = new IdWordCounter(dictionary);
+        final IdWordCounter c2 = new IdWordCounter(dictionary);
+        c1.countWord("a");
+        c2.countWord("a");
+        // Fibonacci numbers, past Integer.MAX_VALUE
+        for (int i = 0; i < 30; i++) {
+            c1.mergeIn(c2);
+            c2.mergeIn(c1);
+        }
+        Assert.assertEquals(c2.getCount("a"), 4_052_739_537_881L);
+        Assert.assertEquals(c2.getTotalCount(), 4_052_739_537_881L);
+        Assert.assertEquals(c2.addTo(new WordCounter()).getCount("a"), 4_052_739_537_881L);
+    }
+
+    @Test
+    public void sameAsSerial() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final ImmutableList<File> files = ImmutableList.of(txtFile1, txtFile2, txtFile1, txtFile2);
+        final WordCounter serial = new SerialWordCounting().countWords(files);
+        final WordCounter dictionary = new DictionaryWordCounting(1).countWords(files);
+        Assert.assertEquals(serial.toMap(), dictionary.toMap());
+        // 3 id counter merges of 4 leaves, and the conversion
+        Assert.assertTrue(dictionary.getPerformanceDataAsString().contains("\n4 merges in "));
+    }
+}
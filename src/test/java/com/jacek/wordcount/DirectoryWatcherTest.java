@@ -0,0 +1,110 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collections;
+
+public final class DirectoryWatcherTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static void append(final File file, final String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(Charset.defaultCharset()),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void incrementalUpdates() throws Exception {
+        final File dir = tmpFolder.getRoot();
+        final File log1 = new File(dir, "a.log");
+        final File ignored = new File(dir, "b.txt");
+        append(log1, "alpha beta\n");
+        append(ignored, "alpha\n");
+
+        try (final DirectoryWatcher watcher = new DirectoryWatcher(dir.getPath(), ".log", Duration.ofSeconds(1))) {
+            watcher.rescan();
+            Assert.assertEquals(watcher.getCount("alpha"), 1);
+            Assert.assertEquals(watcher.getTotalCount(), 2);
+
+            // unterminated token is counted provisionally and completed by the next append
+            append(log1, "gam");
+            watcher.rescan();
+            Assert.assertEquals(watcher.getCount("gam"), 1);
+            append(log1, "ma delta");
+            watcher.rescan();
+            Assert.assertEquals(watcher.getCount("gam"), 0);
+            Assert.assertEquals(watcher.getCount("gamma"), 1);
+            Assert.assertEquals(watcher.getCount("delta"), 1);
+            Assert.assertEquals(watcher.getTotalCount(), 4);
+
+            // new file in a new subdirectory
+            final File subDir = new File(dir, "sub");
+            Assert.assertTrue(subDir.mkdir());
+            final File log2 = new File(subDir, "c.log");
+            append(log2, "alpha alpha");
+            watcher.rescan();
+            Assert.assertEquals(watcher.getCount("alpha"), 3);
+            Assert.assertEquals(watcher.fileCount(), 2);
+            Assert.assertEquals(watcher.topWords(1), Collections.singletonList(new WordCounter.WordCount("alpha", 3)));
+
+            // truncated (rotated in place) file is counted anew
+            Files.write(log1.toPath(), "beta".getBytes(Charset.defaultCharset()));
+            watcher.rescan();
+            Assert.assertEquals(watcher.getCount("alpha"), 2);
+            Assert.assertEquals(watcher.getCount("beta"), 1);
+            Assert.assertEquals(watcher.getCount("gamma"), 0);
+
+            // removed files are subtracted
+            Assert.assertTrue(log2.delete());
+            watcher.rescan();
+            Assert.assertEquals(watcher.getCount("alpha"), 0);
+            Assert.assertEquals(watcher.size(), 1);
+            Assert.assertEquals(watcher.fileCount(), 1);
+        }
+    }
+
+    @Test
+    public void largeAppendMatchesSerialCount() throws Exception {
+        final File dir = tmpFolder.getRoot();
+        final File log = new File(dir, "big.log");
+        final File txtFile = TestUtils.resourceFile("rt-mutex-design.txt");
+        final String text = new String(Files.readAllBytes(txtFile.toPath()), Charset.defaultCharset());
+        try (final DirectoryWatcher watcher = new DirectoryWatcher(dir.getPath(), ".log", Duration.ofSeconds(1))) {
+            // append in odd sized pieces, cutting tokens
+            for (int start = 0; start < text.length(); start += 977) {
+                append(log, text.substring(start, Math.min(text.length(), start + 977)));
+                watcher.rescan();
+            }
+            final WordCounter expected = new SerialWordCounting().countWords(Collections.singletonList(txtFile));
+            Assert.assertEquals(watcher.size(), expected.size());
+            Assert.assertEquals(watcher.topWords(50), expected.topWords(50));
+            Assert.assertEquals(watcher.getCount("mutex"), 129);
+        }
+    }
+
+    @Test
+    public void backgroundThreadFollowsChanges() throws Exception {
+        final File dir = tmpFolder.getRoot();
+        final File log = new File(dir, "a.log");
+        append(log, "alpha ");
+        try (final DirectoryWatcher watcher = new DirectoryWatcher(dir.getPath(), ".log", Duration.ofMillis(100))) {
+            watcher.start();
+            Assert.assertEquals(watcher.getCount("alpha"), 1);
+            append(log, "alpha ");
+            // wait for the watch event (or the next poll) to be processed
+            for (int i = 0; i < 300 && watcher.getCount("alpha") != 2; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(watcher.getCount("alpha"), 2);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public final class ExportTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private WordCounter countResources() throws Exception {
+        return new SerialWordCounting().countWords(ImmutableList.of(
+                TestUtils.resourceFile("rt-mutex-design.txt"),
+                TestUtils.resourceFile("xfs-delayed-logging-design.txt")));
+    }
+
+    @Test
+    public void tsvByCount() throws Exception {
+        final WordCounter wordCounter = countResources();
+        final List<Path> paths = new WordCountExporter(WordCountExporter.Format.TSV, WordCountExporter.Order.BY_COUNT, 1)
+                .export(wordCounter, tmpFolder.getRoot().toPath(), "counts");
+        Assert.assertEquals(paths.size(), 1);
+        final List<String> expected = wordCounter.topWords(wordCounter.size()).stream()
+                .map(wc -> wc.getWord() + "\t" + wc.getCount())
+                .collect(Collectors.toList());
+        Assert.assertEquals(expected, Files.readAllLines(paths.get(0), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void tsvByCountBeyondInt() throws Exception {
+        final WordCounter wordCounter = countResources();
+        wordCounter.countWord("the", 5_000_000_000L);
+        wordCounter.countWord("of", Integer.MAX_VALUE);
+        wordCounter.countWord("zzz", 4_000_000_000L);
+        final List<Path> paths = new WordCountExporter(WordCountExporter.Format.TSV, WordCountExporter.Order.BY_COUNT, 1)
+                .export(wordCounter, tmpFolder.getRoot().toPath(), "counts");
+        final List<String> expected = wordCounter.topWords(wordCounter.size()).stream()
+                .map(wc -> wc.getWord() + "\t" + wc.getCount())
+                .collect(Collectors.toList());
+        Assert.assertEquals(expected, Files.readAllLines(paths.get(0), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void partitionedCsvByWord() throws Exception {
+        final WordCounter wordCounter = new WordCounter();
+        wordCounter.countWord("a,b");
+        wordCounter.countWord("say\"hi\"");
+        for (int i = 0; i < 10_000; i++) {
+            wordCounter.countWord("w" + i % 3000);
+        }
+        final List<Path> paths = new WordCountExporter(WordCountExporter.Format.CSV, WordCountExporter.Order.BY_WORD, 4)
+                .export(wordCounter, tmpFolder.getRoot().toPath(), "counts");
+        Assert.assertEquals(paths.size(), 4);
+        final List<String> all = new ArrayList<>();
+        for (final Path path : paths) {
+            final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            Assert.assertEquals(lines.stream().sorted().collect(Collectors.toList()), lines);
+            all.addAll(lines);
+        }
+        Assert.assertEquals(all.size(), wordCounter.size());
+        Assert.assertTrue(all.contains("\"a,b\",1"));
+        Assert.assertTrue(all.contains("\"say\"\"hi\"\"\",1"));
+        Assert.assertTrue(all.contains("w7,4"));
+    }
+
+    @Test
+    public void unsortedJson() throws Exception {
+        final WordCounter wordCounter = countResources();
+        final List<Path> paths = new WordCountExporter(WordCountExporter.Format.JSON, WordCountExporter.Order.UNSORTED, 3)
+                .export(wordCounter, tmpFolder.getRoot().toPath(), "counts");
+        final Map<String, Long> parsed = new HashMap<>();
+        for (final Path path : paths) {
+            final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            Assert.assertEquals(lines.get(0), "{");
+            Assert.assertEquals(lines.get(lines.size() - 1), "}");
+            for (final String line : lines.subList(1, lines.size() - 1)) {
+                final String entry = line.endsWith(",") ? line.substring(0, line.length() - 1) : line;
+                final int colon = entry.lastIndexOf(':');
+                final String word = entry.substring(1, colon - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+                parsed.put(word, Long.parseLong(entry.substring(colon + 1)));
+            }
+        }
+        Assert.assertEquals(wordCounter.toMap(), parsed);
+    }
+}
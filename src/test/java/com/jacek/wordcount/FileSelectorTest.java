@@ -0,0 +1,81 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public final class FileSelectorTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path write(final String relative, final byte[] bytes) throws Exception {
+        final Path path = tmpFolder.getRoot().toPath().resolve(relative);
+        Files.createDirectories(path.getParent());
+        return Files.write(path, bytes);
+    }
+
+    private Path write(final String relative, final String text) throws Exception {
+        return write(relative, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> names(final List<File> files) {
+        final Path root = tmpFolder.getRoot().toPath();
+        return files.stream().map(file -> root.relativize(file.toPath()).toString()).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void patternsSizesAndBinaries() throws Exception {
+        write("main.c", "int main() { return 0; }\n");
+        write("util.h", "#define X 1\n");
+        write("notes.txt", "not code\n");
+        write("drivers/net/eth.c", "/* driver */\n");
+        write("drivers/net/eth.o", new byte[]{0x7F, 'E', 'L', 'F', 0, 0, 0});
+        write("build/gen.c", "generated\n");
+        write("lib/empty.c", "");
+        final byte[] big = new byte[5000];
+        Arrays.fill(big, (byte) 'x');
+        write("lib/big.c", big);
+        // a NUL byte after text
+        write("lib/blob.c", "looks like text\u0000");
+        // mostly control characters
+        final byte[] control = new byte[100];
+        Arrays.fill(control, (byte) 1);
+        write("lib/ctrl.c", control);
+
+        final FileSelector.Selection selection = new FileSelector(ImmutableList.of("*.c", "*.h"),
+                ImmutableList.of("build"), 1, 4096, true).select(tmpFolder.getRoot().toPath());
+        Assert.assertEquals(names(selection.files), Arrays.asList("drivers/net/eth.c", "main.c", "util.h"));
+        // build/ is pruned without being walked
+        Assert.assertEquals(selection.getSkippedFiles(FileSelector.Reason.EXCLUDED), 2);
+        Assert.assertEquals(selection.getSkippedBytes(FileSelector.Reason.EXCLUDED), 9 + 7);
+        Assert.assertEquals(selection.getSkippedFiles(FileSelector.Reason.SIZE), 2);
+        Assert.assertEquals(selection.getSkippedBytes(FileSelector.Reason.SIZE), 5000);
+        Assert.assertEquals(selection.getSkippedFiles(FileSelector.Reason.BINARY), 2);
+        Assert.assertEquals(selection.getSkippedBytes(FileSelector.Reason.BINARY), 16 + 100);
+
+        // paths with a slash match relative paths; binaries are kept on request
+        final FileSelector.Selection drivers = new FileSelector(ImmutableList.of("drivers/**"),
+                ImmutableList.of(), 0, Long.MAX_VALUE, false).select(tmpFolder.getRoot().toPath());
+        Assert.assertEquals(names(drivers.files), Arrays.asList("drivers/net/eth.c", "drivers/net/eth.o"));
+    }
+
+    @Test
+    public void sniffing() throws Exception {
+        Assert.assertFalse(FileSelector.isBinary(TestUtils.resourceFile("rt-mutex-design.txt").toPath()));
+        Assert.assertFalse(FileSelector.isBinary(TestUtils.resourceFile("empty.txt").toPath()));
+        // bytes above 127 are text, eg. UTF-8
+        Assert.assertFalse(FileSelector.isBinary(write("utf8.txt", "\u017c\u00f3\u0142w\tza\u017c\u00f3\u0142\u0107\n")));
+        Assert.assertTrue(FileSelector.isBinary(write("nul.bin", new byte[]{'a', 0, 'b'})));
+        Assert.assertFalse(FileSelector.isBinary(write("bell.txt", "some\u0007text with a bell\n")));
+    }
+}
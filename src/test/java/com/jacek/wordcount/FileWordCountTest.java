@@ -5,7 +5,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 public final class FileWordCountTest {
     @Test
@@ -34,6 +36,7 @@ public final class FileWordCountTest {
         final WordCountingService serialCounting = new SerialWordCounting();
         final WordCountingService simpleParallel = new SimpleParallelWordCounting(2);
         final WordCountingService forkJoinParallel = new ForkJoinWordCounting(1);
+        final WordCountingService forkJoinAdaptive = new ForkJoinWordCounting();
         final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
         final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
 
@@ -41,13 +44,77 @@ public final class FileWordCountTest {
         final WordCounter wordCounter12 = serialCounting.countWords(files);
         final WordCounter wordCounterSimple = simpleParallel.countWords(files);
         final WordCounter wordCounterFJ = forkJoinParallel.countWords(files);
+        final WordCounter wordCounterAdaptive = forkJoinAdaptive.countWords(files);
 
         Assert.assertEquals(wordCounter12.getCount("process"), 73);
         Assert.assertEquals(wordCounterSimple.getCount("process"), 73);
         Assert.assertEquals(wordCounterFJ.getCount("process"), 73);
+        Assert.assertEquals(wordCounterAdaptive.getCount("process"), 73);
 
         Assert.assertEquals(wordCounter12.topWords(40), wordCounterSimple.topWords(40));
         Assert.assertEquals(wordCounter12.topWords(40), wordCounterFJ.topWords(40));
+        Assert.assertEquals(wordCounter12.topWords(40), wordCounterAdaptive.topWords(40));
+    }
+
+    @Test
+    public void simpleParallelMergesInCompletionOrder() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 41; i++) {
+            files.add(i % 4 == 0 ? txtFile1 : txtFile2);
+        }
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        // an odd number of results leaves one pending between merges
+        final WordCounter wordCounter = new SimpleParallelWordCounting(5).countWords(files);
+        Assert.assertEquals(expected.toMap(), wordCounter.toMap());
+        Assert.assertTrue(new SimpleParallelWordCounting(3).countWords(Collections.emptyList()).getAllWords().isEmpty());
+    }
+
+    @Test
+    public void adaptiveGranularity() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            files.add(i % 3 == 0 ? txtFile1 : txtFile2);
+        }
+        final ForkJoinWordCounting forkJoinAdaptive = new ForkJoinWordCounting();
+        final double defaultNanosPerByte = forkJoinAdaptive.getNanosPerByte();
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        // at the default estimate, about 23 MB is split in leaves of several files, neither one leaf nor one per file
+        final WordCounter first = forkJoinAdaptive.countWords(files);
+        Assert.assertEquals(expected.toMap(), first.toMap());
+        Assert.assertTrue(first.getCumulativeBatchCount() > 1);
+        Assert.assertTrue(first.getCumulativeBatchCount() < files.size() / 2);
+        for (int i = 0; i < 2; i++) {
+            final WordCounter wordCounter = forkJoinAdaptive.countWords(files);
+            Assert.assertEquals(expected.toMap(), wordCounter.toMap());
+        }
+        // the throughput has been measured
+        Assert.assertNotEquals(forkJoinAdaptive.getNanosPerByte(), defaultNanosPerByte, 0.0);
+        Assert.assertTrue(forkJoinAdaptive.countWords(Collections.emptyList()).getAllWords().isEmpty());
+    }
+
+    @Test
+    public void memoryBudget() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            files.add(i % 3 == 0 ? txtFile1 : txtFile2);
+        }
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        // always over budget: one leaf at a time, every counter merged early
+        final MemoryBudget tiny = new MemoryBudget(1L);
+        Assert.assertEquals(new ForkJoinWordCounting(tiny).countWords(files).toMap(), expected.toMap());
+        Assert.assertTrue(tiny.getPeak() > 0);
+        Assert.assertEquals(tiny.getUsed(), 0L);
+
+        final MemoryBudget ample = MemoryBudget.ofMaxHeap(0.5);
+        Assert.assertEquals(new ForkJoinWordCounting(ample).countWords(files).toMap(), expected.toMap());
+        Assert.assertTrue(ample.getPeak() >= expected.estimatedMemory());
+        Assert.assertEquals(ample.getUsed(), 0L);
     }
 
     @Test
@@ -0,0 +1,139 @@
+package com.jacek.wordcount;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Main program to compare tokenization and counting with and without a HotWordCache in front of WordCounter,
+ * in the manner of CounterAlternativePerformanceTest: text is counted in leaves of a thousand lines, each into
+ * its own word counter merged into the total, so the cache is flushed per leaf
+ */
+final class HotWordCacheBenchmark {
+    private static final int LEAF_LINES = 1000;
+
+    /**
+     * @param args optionally the zipped text files to count (default linux-4.9.95-docs.zip if present,
+     *             or else the text resources repeated), or zipfN for a synthetic text of Zipf distributed words
+     *             out of a vocabulary of N, and the number of repetitions (default 30)
+     */
+    public static void main(String[] args) {
+        try {
+            final List<String> lines = args.length > 0 && args[0].startsWith("zipf")
+                    ? zipfLines(Integer.parseInt(args[0].substring(4)))
+                    : args.length > 0 && !args[0].isEmpty() ? TestUtils.unzipToLines(new File(args[0])) : defaultLines();
+            final int n = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+            // leaves of about a thousand lines, as counted by leaf tasks
+            final List<String> leaves = new ArrayList<>();
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < lines.size(); i++) {
+                sb.append(lines.get(i)).append('\n');
+                if (i % LEAF_LINES == LEAF_LINES - 1 || i == lines.size() - 1) {
+                    leaves.add(sb.toString());
+                    sb.setLength(0);
+                }
+            }
+            final WordCounter expected = countLeaves(leaves, null);
+            System.out.println("wordCount = " + expected.getTotalCount() + ", unique = " + expected.size()
+                    + ", leaves = " + leaves.size());
+
+            final HotWordCache cache = new HotWordCache();
+            for (int round = 0; round < 2; round++) {
+                // the first round warms up both
+                measure("leaves: WordCounter", n, () -> countLeaves(leaves, null));
+                // as the cache kept per thread, warm from one leaf to the next
+                measure("leaves: HotWordCache", n, () -> countLeaves(leaves, cache));
+            }
+            checkArgument(countLeaves(leaves, cache).toMap().equals(expected.toMap()));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return counts of all leaves, each tokenized and counted into its own word counter, through the cache if any,
+     * and merged
+     */
+    private static WordCounter countLeaves(final List<String> leaves, final HotWordCache cache) throws IOException {
+        final WordCounter total = new WordCounter();
+        final char[] buffer = new char[Core.CHUNK_SIZE];
+        for (final String leaf : leaves) {
+            final WordCounter counts = new WordCounter();
+            if (cache == null) {
+                Core.tokenize(new StringReader(leaf), buffer, counts::countWord);
+            } else {
+                Core.tokenize(new StringReader(leaf), buffer, TokenFilter.NONE, cache.attach(counts)::countToken);
+                cache.flush();
+            }
+            total.mergeIn(counts);
+        }
+        return total;
+    }
+
+    private interface Run {
+        WordCounter run() throws Exception;
+    }
+
+    private static void measure(final String name, final int n, final Run run) throws Exception {
+        long minTime = Long.MAX_VALUE;
+        long totalTime = 0L;
+        for (int i = n; --i >= 0; ) {
+            final long before = System.nanoTime();
+            run.run();
+            final long time = (System.nanoTime() - before) / 1_000_000;
+            minTime = Math.min(minTime, time);
+            totalTime += time;
+        }
+        System.out.println(name + "\tminTime = " + minTime + "\taverage " + totalTime / n);
+    }
+
+    private static List<String> defaultLines() throws Exception {
+        final File zip = new File("src/test/resources/linux-4.9.95-docs.zip");
+        if (zip.exists()) {
+            return TestUtils.unzipToLines(zip);
+        }
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            for (final String name : new String[]{"rt-mutex-design.txt", "xfs-delayed-logging-design.txt"}) {
+                lines.addAll(Files.readAllLines(TestUtils.resourceFile(name).toPath(), StandardCharsets.UTF_8));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return 2M words drawn with Zipf's law, frequency inversely proportional to rank, from random words
+     */
+    private static List<String> zipfLines(final int vocabularySize) {
+        final Random random = new Random(42);
+        final String[] vocabulary = new String[vocabularySize];
+        final double[] cumulative = new double[vocabularySize];
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            final char[] chars = new char[2 + random.nextInt(10)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) ('a' + random.nextInt(26));
+            }
+            vocabulary[rank] = new String(chars);
+            cumulative[rank] = (rank > 0 ? cumulative[rank - 1] : 0.0) + 1.0 / (rank + 1);
+        }
+        final List<String> lines = new ArrayList<>();
+        final StringBuilder line = new StringBuilder();
+        for (int i = 1; i <= 2_000_000; i++) {
+            final int found = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[vocabularySize - 1]);
+            line.append(vocabulary[Math.min(vocabularySize - 1, found >= 0 ? found : -found - 1)]).append(' ');
+            if (i % 10 == 0) {
+                lines.add(line.toString());
+                line.setLength(0);
+            }
+        }
+        return lines;
+    }
+}
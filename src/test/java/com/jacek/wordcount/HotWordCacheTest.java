@@ -0,0 +1,53 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+public final class HotWordCacheTest {
+    private static WordCounter count(final String text, final HotWordCache cache) throws Exception {
+        final WordCounter wordCounter = new WordCounter();
+        Core.tokenize(new StringReader(text), new char[16], TokenFilter.NONE, cache.attach(wordCounter)::countToken);
+        return cache.flush();
+    }
+
+    @Test
+    public void countsAsWordCounter() throws Exception {
+        // \u017c\u00f3\u0142w is not cached, as not ASCII
+        final String text = "The cat and THE dog, the \u017c\u00f3\u0142w and \u017b\u00f3\u0142w; a Cat! "
+                + "supercalifragilisticexpialidocious the end";
+        final WordCounter expected = new WordCounter();
+        Core.tokenize(new StringReader(text), new char[16], expected::countWord);
+
+        // 2 slots, so words keep evicting each other
+        final HotWordCache cache = new HotWordCache(2);
+        Assert.assertEquals(count(text, cache).toMap(), expected.toMap());
+        // the cache keeps its words, but not their counts, after a flush
+        Assert.assertEquals(count(text, cache).toMap(), expected.toMap());
+        Assert.assertEquals(count(text, new HotWordCache()).getCount("the"), 4L);
+        Assert.assertEquals(count(text, new HotWordCache()).getCount("\u017c\u00f3\u0142w"), 2L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void attachWithoutFlush() {
+        final HotWordCache cache = new HotWordCache();
+        cache.attach(new WordCounter());
+        cache.attach(new WordCounter());
+    }
+
+    @Test
+    public void countsFiles() throws Exception {
+        final List<File> files = Arrays.asList(TestUtils.resourceFile("rt-mutex-design.txt"),
+                TestUtils.resourceFile("xfs-delayed-logging-design.txt"), TestUtils.resourceFile("empty.txt"));
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final WordCounter wordCounter = new WordCounter();
+        Core.countWordsInFiles(files, TokenFilter.NONE, true, wordCounter);
+        Assert.assertEquals(wordCounter.toMap(), expected.toMap());
+        Assert.assertEquals(new ForkJoinWordCounting(1, 2, null, TokenFilter.NONE, true).countWords(files).toMap(),
+                expected.toMap());
+    }
+}
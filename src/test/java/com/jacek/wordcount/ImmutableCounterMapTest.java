@@ -32,7 +32,7 @@ public final class ImmutableCounterMapTest {
         final Set<String> allWords = wordCounter.getAllWords();
 
         // extract immutable representation of word counts
-        final Map<String, Integer> immutable = wordCounter.toMap();
+        final Map<String, Long> immutable = wordCounter.toMap();
 
         // verify that the word sets are the same
         Assert.assertEquals(allWords, immutable.keySet());
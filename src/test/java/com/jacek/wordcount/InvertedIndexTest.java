@@ -0,0 +1,85 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public final class InvertedIndexTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File newFile(final String name, final String text) throws Exception {
+        final File file = tmpFolder.newFile(name);
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void postings() throws Exception {
+        final List<File> files = Arrays.asList(
+                newFile("0.txt", "a b a"),
+                newFile("1.txt", ""),
+                newFile("2.txt", "B, c"),
+                newFile("3.txt", "a kmalloc_node"));
+        final Path path = tmpFolder.newFile("postings.idx").toPath();
+        InvertedIndex.write(files, TokenFilter.NONE, 3, path);
+        final InvertedIndex index = InvertedIndex.open(path);
+
+        Assert.assertEquals(index.fileCount(), 4);
+        Assert.assertEquals(index.size(), 4);
+        Assert.assertEquals(index.getFile(2), files.get(2).getPath());
+        Assert.assertEquals(index.getPostings("a"), Arrays.asList(new InvertedIndex.Posting(0, 2), new InvertedIndex.Posting(3, 1)));
+        Assert.assertEquals(index.getPostings("b"), Arrays.asList(new InvertedIndex.Posting(0, 1), new InvertedIndex.Posting(2, 1)));
+        Assert.assertEquals(index.getPostings("kmalloc_node"), Collections.singletonList(new InvertedIndex.Posting(3, 1)));
+        Assert.assertEquals(index.getDocumentFrequency("a"), 2);
+        Assert.assertEquals(index.getCount("a"), 3L);
+        Assert.assertEquals(index.getInverseDocumentFrequency("c"), Math.log(4.0), 1e-12);
+
+        Assert.assertEquals(index.getPostings("z"), Collections.emptyList());
+        Assert.assertEquals(index.getDocumentFrequency("z"), 0);
+        Assert.assertEquals(index.getCount("z"), 0L);
+        Assert.assertEquals(index.getInverseDocumentFrequency("z"), 0.0, 0.0);
+    }
+
+    @Test
+    public void agreesWithCountsPerFile() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final WordCounter counts1 = new SerialWordCounting().countWords(Collections.singletonList(txtFile1));
+        final WordCounter counts2 = new SerialWordCounting().countWords(Collections.singletonList(txtFile2));
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            // some files are empty, so that word postings skip file ids
+            files.add(i % 5 == 4 ? TestUtils.resourceFile("empty.txt") : i % 3 == 0 ? txtFile1 : txtFile2);
+        }
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final Path path = tmpFolder.newFile("docs.idx").toPath();
+        InvertedIndex.write(files, TokenFilter.NONE, 4, path);
+        final InvertedIndex index = InvertedIndex.open(path);
+
+        Assert.assertEquals(index.size(), expected.size());
+        for (final String word : expected.getAllWords()) {
+            final List<InvertedIndex.Posting> postings = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                final long count = files.get(i) == txtFile1 ? counts1.getCount(word)
+                        : files.get(i) == txtFile2 ? counts2.getCount(word) : 0L;
+                if (count > 0) {
+                    postings.add(new InvertedIndex.Posting(i, count));
+                }
+            }
+            Assert.assertEquals(index.getPostings(word), postings);
+            Assert.assertEquals(index.getDocumentFrequency(word), postings.size());
+            Assert.assertEquals(index.getCount(word), expected.getCount(word));
+        }
+    }
+}
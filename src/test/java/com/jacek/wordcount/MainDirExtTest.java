@@ -0,0 +1,51 @@
+package com.jacek.wordcount;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public final class MainDirExtTest {
+    @Test
+    public void acceptsOptions() {
+        MainDirExt.checkOptions(Arrays.asList("--include=*.md", "--exclude=build", "--binary", "--dedup",
+                "--checkpoint=run.ckpt", "--checkpoint-interval=10", "--export=out", "--no-numbers", "--min-length=2"));
+        MainDirExt.checkOptions(Arrays.asList("--hot-words", "--memory-budget=512", "--dedup"));
+        MainDirExt.checkOptions(Arrays.asList("--sample=0.05", "--stop-words=stop.txt", "--max-size=1000000"));
+        MainDirExt.checkOptions(Arrays.asList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOption() {
+        MainDirExt.checkOptions(Arrays.asList("--dedup", "--chekpoint=run.ckpt"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void flagWithValue() {
+        MainDirExt.checkOptions(Arrays.asList("--binary=yes"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void memoryBudgetWithCheckpoint() {
+        MainDirExt.checkOptions(Arrays.asList("--checkpoint=run.ckpt", "--memory-budget=512"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hotWordsWithCheckpoint() {
+        MainDirExt.checkOptions(Arrays.asList("--hot-words", "--checkpoint=run.ckpt"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkpointIntervalWithoutCheckpoint() {
+        MainDirExt.checkOptions(Arrays.asList("--checkpoint-interval=10"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void exportWithSample() {
+        MainDirExt.checkOptions(Arrays.asList("--sample=0.05", "--export=out"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sampleWithIndex() {
+        MainDirExt.checkOptions(Arrays.asList("--sample-adaptive=0.05", "--index=words.idx"));
+    }
+}
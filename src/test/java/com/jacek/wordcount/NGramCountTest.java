@@ -0,0 +1,112 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public final class NGramCountTest {
+    @Test
+    public void bigramsAcrossChunks() throws Exception {
+        final NGramCounter counter = new NGramCounter(new WordDictionary(), 2);
+        // tiny buffer makes tokens span buffer fills
+        Core.tokenize(new StringReader("The cat, the CAT.\nthe dog"), new char[3], counter.newSequence());
+
+        Assert.assertEquals(counter.getCount("the", "cat"), 2);
+        Assert.assertEquals(counter.getCount("cat", "the"), 2);
+        Assert.assertEquals(counter.getCount("the", "dog"), 1);
+        Assert.assertEquals(counter.getCount("dog", "the"), 0);
+        Assert.assertEquals(counter.getCount("the", "bird"), 0);
+        Assert.assertEquals(counter.size(), 3);
+        Assert.assertEquals(counter.getTotalCount(), 5);
+        Assert.assertEquals(counter.topNGrams(2), Arrays.asList(
+                new WordCounter.WordCount("cat the", 2),
+                new WordCounter.WordCount("the cat", 2)));
+    }
+
+    @Test
+    public void sequencesDoNotSpanFiles() {
+        final NGramCounter counter = new NGramCounter(new WordDictionary(), 3);
+        final Consumer<String> sequence1 = counter.newSequence();
+        Arrays.asList("a", "b", "c", "d").forEach(sequence1);
+        final Consumer<String> sequence2 = counter.newSequence();
+        Arrays.asList("e", "f").forEach(sequence2);
+
+        Assert.assertEquals(counter.getCount("a", "b", "c"), 1);
+        Assert.assertEquals(counter.getCount("b", "c", "d"), 1);
+        Assert.assertEquals(counter.getCount("c", "d", "e"), 0);
+        Assert.assertEquals(counter.getCount("d", "e", "f"), 0);
+        Assert.assertEquals(counter.size(), 2);
+    }
+
+    @Test
+    public void countsBeyondInt() {
+        final WordDictionary dictionary = new WordDictionary();
+        final NGramCounter c1 = new NGramCounter(dictionary, 2);
+        final NGramCounter c2 = new NGramCounter(dictionary, 2);
+        Arrays.asList("a", "b").forEach(c1.newSequence());
+        Arrays.asList("a", "b").forEach(c2.newSequence());
+        // Fibonacci numbers, past Integer.MAX_VALUE
+        for (int i = 0; i < 30; i++) {
+            c1.mergeIn(c2);
+            c2.mergeIn(c1);
+        }
+        Assert.assertEquals(c2.getCount("a", "b"), 4_052_739_537_881L);
+        Assert.assertEquals(c2.getTotalCount(), 4_052_739_537_881L);
+        Assert.assertEquals(c2.topNGrams(1), Arrays.asList(new WordCounter.WordCount("a b", 4_052_739_537_881L)));
+    }
+
+    @Test
+    public void unigramsMatchWordCounter() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final ImmutableList<File> files = ImmutableList.of(txtFile1, txtFile2, txtFile1);
+        final WordCounter wordCounter = new SerialWordCounting().countWords(files);
+        final NGramCounter unigrams = new ForkJoinNGramCounting(1, 1).countNGrams(files);
+
+        Assert.assertEquals(unigrams.size(), wordCounter.size());
+        Assert.assertEquals(unigrams.getTotalCount(), wordCounter.getTotalCount());
+        Assert.assertEquals(unigrams.topNGrams(40), wordCounter.topWords(40));
+    }
+
+    @Test
+    public void parallelMatchesSerial() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final ImmutableList<File> files = ImmutableList.of(txtFile1, txtFile2, txtFile2);
+        for (int n = 1; n <= 3; n++) {
+            final NGramCounter serial = new NGramCounter(new WordDictionary(), n);
+            Core.countNGramsInFiles(files, serial);
+            final NGramCounter parallel = new ForkJoinNGramCounting(n, 1).countNGrams(files);
+            Assert.assertEquals(serial.size(), parallel.size());
+            Assert.assertEquals(serial.getTotalCount(), parallel.getTotalCount());
+            Assert.assertEquals(serial.topNGrams(100), parallel.topNGrams(100));
+            final NGramCounter adaptive = new ForkJoinNGramCounting(n, 0).countNGrams(files);
+            Assert.assertEquals(serial.topNGrams(100), adaptive.topNGrams(100));
+        }
+    }
+
+    @Test
+    public void trigramsOfLargeVocabulary() {
+        // ids beyond 21 bits, which three of once had to fit in a long
+        final WordDictionary dictionary = new WordDictionary();
+        for (int i = 0; i < (1 << 21) + 10; i++) {
+            dictionary.idOf("w" + i);
+        }
+        final NGramCounter counter = new NGramCounter(dictionary, 3);
+        Arrays.asList("w2097160", "w1", "w2097161", "w2097160", "w1", "w2097161", "w1").forEach(counter.newSequence());
+
+        Assert.assertEquals(counter.getCount("w2097160", "w1", "w2097161"), 2);
+        Assert.assertEquals(counter.getCount("w1", "w2097161", "w2097160"), 1);
+        Assert.assertEquals(counter.getCount("w2097161", "w2097160", "w1"), 1);
+        Assert.assertEquals(counter.getCount("w1", "w2097161", "w1"), 1);
+        Assert.assertEquals(counter.getCount("w2097161", "w1", "w2097160"), 0);
+        Assert.assertEquals(counter.size(), 4);
+        Assert.assertEquals(counter.topNGrams(1),
+                Arrays.asList(new WordCounter.WordCount("w2097160 w1 w2097161", 2)));
+    }
+}
@@ -28,6 +28,10 @@ public final class PerformanceComparison {
             long minFAJ = Long.MAX_VALUE;
             long totalLIN = 0L;
             long totalFAJ = 0L;
+            long minADA = Long.MAX_VALUE;
+            long totalADA = 0L;
+            // adaptive service instance is reused so that its throughput measurements carry over
+            final ForkJoinWordCounting adaptive = new ForkJoinWordCounting();
             for (int n = nReps; --n >= 0; ) {
                 {
                     final WordCountingService wordCountingService = new SerialWordCounting();
@@ -65,6 +69,23 @@ public final class PerformanceComparison {
                         System.out.println("wordCounter top 20 = " + wordCounter.topWords(20));
                     }
                 }
+                {
+                    final WordCountingService wordCountingService = adaptive;
+                    final Instant before = Instant.now();
+                    final WordCounter wordCounter = wordCountingService.countWords(fileList);
+                    final long timeMsec = Duration.between(before, Instant.now()).toMillis();
+                    totalADA += timeMsec;
+                    minADA = Math.min(minADA, timeMsec);
+                    System.out.println("time ADAPTIVE\t\t= " + timeMsec + " ms");
+                    if (n == 0) {
+                        System.out.println();
+                        System.out.println(String.format("Adaptive:\tavg msec: %d, min msec: %d", totalADA / nReps, minADA));
+                        System.out.println();
+                        System.out.println("token count   = " + wordCounter.size());
+                        System.out.println("wordCounter = " + wordCounter.getPerformanceDataAsString());
+                        System.out.println("nanos/byte = " + adaptive.getNanosPerByte());
+                    }
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
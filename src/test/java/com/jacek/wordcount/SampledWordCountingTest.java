@@ -0,0 +1,81 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class SampledWordCountingTest {
+    private static List<File> files() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            files.add(i % 3 == 0 ? txtFile1 : txtFile2);
+        }
+        return files;
+    }
+
+    @Test
+    public void fullSampleIsExact() throws Exception {
+        final List<File> files = files().subList(0, 3);
+        final List<WordCounter.WordCount> expected = new SerialWordCounting().countWords(files).topWords(30);
+        // chunk boundaries cut through tokens and lines
+        for (final int chunkBytes : new int[]{7, 1000, SampledWordCounting.DEFAULT_CHUNK_BYTES}) {
+            final SampledWordCounting.Estimate estimate =
+                    new SampledWordCounting(1.0, chunkBytes, 42L, 2, TokenFilter.NONE).topWords(files, 30);
+            Assert.assertEquals(estimate.getSampledFraction(), 1.0, 0.0);
+            Assert.assertEquals(estimate.topWords.size(), expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                final SampledWordCounting.WordEstimate wordEstimate = estimate.topWords.get(i);
+                Assert.assertEquals(wordEstimate.word, expected.get(i).getWord());
+                Assert.assertEquals(wordEstimate.count, expected.get(i).getCount());
+                Assert.assertEquals(wordEstimate.low, wordEstimate.count);
+                Assert.assertEquals(wordEstimate.high, wordEstimate.count);
+                Assert.assertTrue(wordEstimate.rankLow <= i + 1 && i + 1 <= wordEstimate.rankHigh);
+            }
+        }
+    }
+
+    @Test
+    public void intervalsCoverTrueCounts() throws Exception {
+        final List<File> files = files();
+        final WordCounter exact = new SerialWordCounting().countWords(files);
+        final List<WordCounter.WordCount> exactTop = exact.topWords(exact.size());
+        final SampledWordCounting.Estimate estimate =
+                new SampledWordCounting(0.25, 4096, 7L, 2, TokenFilter.NONE).topWords(files, 10);
+        Assert.assertTrue(estimate.getSampledFraction() >= 0.25 && estimate.getSampledFraction() < 0.3);
+        Assert.assertEquals(estimate.rounds, 1);
+        int covered = 0;
+        for (final SampledWordCounting.WordEstimate wordEstimate : estimate.topWords) {
+            final long count = exact.getCount(wordEstimate.word);
+            int rank = 1;
+            while (!exactTop.get(rank - 1).getWord().equals(wordEstimate.word)) {
+                ++rank;
+            }
+            Assert.assertTrue(wordEstimate.low <= wordEstimate.count && wordEstimate.count <= wordEstimate.high);
+            Assert.assertTrue(wordEstimate.rankLow <= wordEstimate.rankHigh);
+            if (wordEstimate.low <= count && count <= wordEstimate.high
+                    && wordEstimate.rankLow <= rank && rank <= wordEstimate.rankHigh) {
+                ++covered;
+            }
+        }
+        // 95% intervals
+        Assert.assertTrue(covered >= 8);
+    }
+
+    @Test
+    public void adaptiveSamplingStopsWhenTopIsStable() throws Exception {
+        final List<File> files = files();
+        final List<WordCounter.WordCount> exactTop = new SerialWordCounting().countWords(files).topWords(3);
+        final SampledWordCounting.Estimate estimate =
+                new SampledWordCounting(0.05, 4096, 11L, 2, TokenFilter.NONE).topWordsAdaptive(files, 3);
+        Assert.assertTrue(estimate.rounds >= 2);
+        Assert.assertTrue(estimate.getSampledFraction() <= 0.05 * estimate.rounds + 0.01);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(estimate.topWords.get(i).word, exactTop.get(i).getWord());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public final class ScalabilitySweepTest {
+    @Test
+    public void threadCounts() {
+        Assert.assertEquals(ScalabilitySweep.powersOfTwoUpTo(1), ImmutableList.of(1));
+        Assert.assertEquals(ScalabilitySweep.powersOfTwoUpTo(8), ImmutableList.of(1, 2, 4, 8));
+        Assert.assertEquals(ScalabilitySweep.powersOfTwoUpTo(12), ImmutableList.of(1, 2, 4, 8, 12));
+    }
+
+    @Test
+    public void csvRows() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(TestUtils.resourceFile(i % 2 == 0 ? "rt-mutex-design.txt" : "xfs-delayed-logging-design.txt"));
+        }
+        final StringWriter out = new StringWriter();
+        new ScalabilitySweep(ImmutableList.of(1, 2), ImmutableList.of(4, 10), 1).run(files, out);
+        final String[] lines = out.toString().split("\\R");
+        // header, then per corpus size: serial, and 5 services times 2 thread counts
+        Assert.assertEquals(lines.length, 1 + 2 * (1 + 5 * 2));
+        Assert.assertEquals(lines[0], ScalabilitySweep.HEADER);
+        Assert.assertTrue(lines[1].startsWith("serial,1,4,"));
+        Assert.assertTrue(lines[1].contains(",1.000,1.000,"));
+        for (final String line : lines) {
+            Assert.assertEquals(line.split(",").length, 9);
+        }
+    }
+
+    @Test
+    public void csvRowsIndependentOfDefaultLocale() throws Exception {
+        final Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);  // decimal comma
+        try {
+            final StringWriter out = new StringWriter();
+            new ScalabilitySweep(ImmutableList.of(1), ImmutableList.of(1), 1)
+                    .run(ImmutableList.of(TestUtils.resourceFile("rt-mutex-design.txt")), out);
+            final String[] lines = out.toString().split("\\R");
+            Assert.assertTrue(lines[1], lines[1].contains(",1.000,1.000,"));
+            for (final String line : lines) {
+                Assert.assertEquals(line.split(",").length, 9);
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jacek.wordcount;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Main program to measure time to first result of Main on two small files, in fresh JVMs launched
+ * plainly, from the class data sharing archive built with the assembly, and from the archive with C1 only
+ */
+final class StartupBenchmark {
+    /**
+     * @param args the assembled jar, with its archive, if built, as the jar's path with extension .jsa;
+     *             optionally the number of launches per configuration (default 20)
+     */
+    public static void main(String[] args) {
+        try {
+            final String jar = args[0];
+            final int reps = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+            final String archive = jar.replaceAll("\\.jar$", ".jsa");
+            final List<String> files = Arrays.asList(
+                    TestUtils.resourceFile("rt-mutex-design.txt").getPath(),
+                    TestUtils.resourceFile("xfs-delayed-logging-design.txt").getPath());
+            final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+            measure("plain", reps, files, java, "-cp", jar);
+            if (new File(archive).exists()) {
+                measure("archive", reps, files, java, "-XX:SharedArchiveFile=" + archive, "-cp", jar);
+                measure("archive, C1", reps, files, java, "-XX:SharedArchiveFile=" + archive,
+                        "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-cp", jar);
+            } else {
+                System.out.println("no archive " + archive + ", build it with sbt assembly on JDK 13 or later");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void measure(final String name, final int reps, final List<String> files,
+                                final String... jvm) throws Exception {
+        final List<Long> firstLineMillis = new ArrayList<>();
+        final List<Long> exitMillis = new ArrayList<>();
+        for (int i = 0; i < reps; i++) {
+            final List<String> command = new ArrayList<>(Arrays.asList(jvm));
+            command.add("com.jacek.wordcount.Main");
+            command.addAll(files);
+            final long before = System.nanoTime();
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (final BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                out.readLine();
+                firstLineMillis.add((System.nanoTime() - before) / 1_000_000);
+                while (out.readLine() != null) {
+                    // drain
+                }
+            }
+            process.waitFor();
+            exitMillis.add((System.nanoTime() - before) / 1_000_000);
+        }
+        Collections.sort(firstLineMillis);
+        Collections.sort(exitMillis);
+        System.out.println(String.format("%-12s first result: min %d ms, median %d ms; exit: min %d ms, median %d ms",
+                name, firstLineMillis.get(0), firstLineMillis.get(reps / 2), exitMillis.get(0), exitMillis.get(reps / 2)));
+    }
+}
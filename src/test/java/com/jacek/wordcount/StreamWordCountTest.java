@@ -0,0 +1,151 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public final class StreamWordCountTest {
+    @Test
+    public void sameAsSerial() throws Exception {
+        final File txtFile1 = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File txtFile2 = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        final ImmutableList<File> files = ImmutableList.of(txtFile1, txtFile2, txtFile1);
+        final WordCounter serial = new SerialWordCounting().countWords(files);
+
+        Assert.assertEquals(serial.toMap(), new StreamWordCounting(3).countWords(files).toMap());
+
+        final byte[] bytes1 = Files.readAllBytes(txtFile1.toPath());
+        final WordCounter mixed = new StreamWordCounting(2).countWordsInSources(Arrays.asList(
+                TextSource.of(new FileInputStream(txtFile1)),
+                TextSource.of(FileChannel.open(txtFile2.toPath(), StandardOpenOption.READ)),
+                TextSource.of(ByteBuffer.wrap(bytes1))));
+        Assert.assertEquals(serial.toMap(), mixed.toMap());
+    }
+
+    @Test
+    public void singleStreamOfManyChunks() throws Exception {
+        // several MB in one stream, with long lines and multi byte characters
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 400_000; i++) {
+            sb.append("w").append(i % 1000).append(i % 7 == 0 ? " \u017c\u00f3\u0142w\n" : " ");
+        }
+        final byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        final WordCounter expected = new WordCounter();
+        Core.countWordsFromReader(new StringReader(sb.toString()), expected);
+
+        final WordCounter wordCounter = new StreamWordCounting(4, StandardCharsets.UTF_8)
+                .countWords(new ByteArrayInputStream(bytes));
+        Assert.assertEquals(expected.toMap(), wordCounter.toMap());
+        Assert.assertEquals(wordCounter.getCount("\u017c\u00f3\u0142w"), 400_000 / 7 + 1);
+    }
+
+    @Test
+    public void tokenLongerThanChunk() throws Exception {
+        final char[] longToken = new char[3_000_000];
+        Arrays.fill(longToken, 'x');
+        final String text = "a " + new String(longToken) + " b";
+        final WordCounter wordCounter = new StreamWordCounting(2, StandardCharsets.UTF_8)
+                .countWords(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(wordCounter.size(), 3);
+        Assert.assertEquals(wordCounter.getCount(new String(longToken)), 1);
+        Assert.assertEquals(wordCounter.getCount("b"), 1);
+    }
+
+    private static byte[] manyChunks() {
+        final byte[] bytes = new byte[6 << 20];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 5 == 4 ? ' ' : 'a' + i % 5);
+        }
+        return bytes;
+    }
+
+    @Test(timeout = 20_000)
+    public void failingSourcesReturnTheirBuffers() throws Exception {
+        // more failing sources than buffers, each failing after a chunk has been handed over
+        final byte[] bytes = manyChunks();
+        final List<TextSource> sources = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sources.add(() -> new InputStream() {
+                private final InputStream in = new ByteArrayInputStream(bytes, 0, (1 << 20) + 100);
+
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("broken pipe");
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = in.read(b, off, len);
+                    if (n < 0) {
+                        throw new IOException("broken pipe");
+                    }
+                    return n;
+                }
+            });
+        }
+        sources.add(TextSource.of(ByteBuffer.wrap(bytes)));
+        final WordCounter wordCounter = new StreamWordCounting(1, StandardCharsets.UTF_8).countWordsInSources(sources);
+        // the first chunk of each failing source is counted, as well as the whole last source
+        Assert.assertEquals(wordCounter.getCount("abcd"), 10 * ((1 << 20) / 5) + (6 << 20) / 5);
+    }
+
+    @Test(timeout = 20_000)
+    public void failingWorkerFailsTheRun() throws Exception {
+        final Charset failing = new Charset("x-failing", null) {
+            @Override
+            public boolean contains(final Charset cs) {
+                return false;
+            }
+
+            @Override
+            public CharsetDecoder newDecoder() {
+                return new CharsetDecoder(this, 1f, 1f) {
+                    @Override
+                    protected CoderResult decodeLoop(final ByteBuffer in, final CharBuffer out) {
+                        throw new IllegalStateException("cannot decode");
+                    }
+                };
+            }
+
+            @Override
+            public CharsetEncoder newEncoder() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try {
+            new StreamWordCounting(2, failing).countWords(new ByteArrayInputStream(manyChunks()));
+            Assert.fail("expected the workers' failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage(), e.getCause().getMessage().endsWith("cannot decode"));
+        }
+    }
+
+    @Test
+    public void emptyInput() throws Exception {
+        final WordCounter wordCounter = new StreamWordCounting(2)
+                .countWordsInSources(Collections.singletonList(TextSource.of(ByteBuffer.allocate(0))));
+        Assert.assertTrue(wordCounter.getAllWords().isEmpty());
+    }
+}
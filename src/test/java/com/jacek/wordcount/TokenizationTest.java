@@ -5,8 +5,10 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 public final class TokenizationTest {
     @Test
@@ -20,4 +22,78 @@ public final class TokenizationTest {
         Assert.assertEquals(wc.getCount("c"), 1);
         Assert.assertEquals(wc.getCount("d"), 0);
     }
+
+    @Test
+    public void tokenizeChunks() throws IOException {
+        final String text = "<a b> ,,B \tc a, b. A!\nlong-line-token xyz\r\n\n  !!abcdefghijklmnop!! end";
+        final WordCounter expected = new WordCounter();
+        Core.countWordsFromReader(new StringReader(text), expected);
+        // buffer sizes smaller than tokens force carry over and buffer growth
+        for (int bufferSize = 1; bufferSize <= 2 * text.length(); bufferSize++) {
+            final WordCounter wc = new WordCounter();
+            Core.countWordsFromReader(new StringReader(text), new char[bufferSize], wc);
+            Assert.assertEquals(expected.toMap(), wc.toMap());
+        }
+        Assert.assertEquals(expected.getCount("a"), 3);
+        Assert.assertEquals(expected.getCount("abcdefghijklmnop"), 1);
+        Assert.assertEquals(expected.getCount("long-line-token"), 1);
+        Assert.assertEquals(expected.getCount("end"), 1);
+    }
+
+    @Test
+    public void filterTokens() throws IOException {
+        final TokenFilter filter = new TokenFilter(Arrays.asList("The", "a", "of", ""), 1, 10, true);
+        final WordCounter wc = new WordCounter();
+        Core.tokenize(new StringReader("The cost of a token: 1,000.5 tokens in 2018, THE end! x extraordinarily"),
+                new char[8], filter, wc::countWord);
+        Assert.assertEquals(wc.getCount("the"), 0);
+        Assert.assertEquals(wc.getCount("of"), 0);
+        Assert.assertEquals(wc.getCount("a"), 0);
+        Assert.assertEquals(wc.getCount("1,000.5"), 0);
+        Assert.assertEquals(wc.getCount("2018"), 0);
+        Assert.assertEquals(wc.getCount("extraordinarily"), 0);
+        Assert.assertEquals(wc.getCount("x"), 1);
+        Assert.assertEquals(wc.getCount("token"), 1);
+        Assert.assertEquals(wc.getCount("tokens"), 1);
+        Assert.assertEquals(wc.getCount("end"), 1);
+        Assert.assertEquals(wc.getCount("cost"), 1);
+        Assert.assertEquals(wc.getCount("in"), 1);
+        Assert.assertEquals(wc.getTotalCount(), 6L);
+    }
+
+    @Test
+    public void stopWordPerfectHash() {
+        final List<String> stopWords = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            stopWords.add("w" + Integer.toString(i * 7919, 36));
+        }
+        final TokenFilter filter = new TokenFilter(stopWords, 1, Integer.MAX_VALUE, false);
+        for (final String stopWord : stopWords) {
+            Assert.assertFalse(stopWord, filter.accepts(stopWord));
+            Assert.assertFalse(stopWord, filter.accepts(stopWord.toUpperCase()));
+            Assert.assertTrue(stopWord, filter.accepts(stopWord + "x"));
+        }
+        Assert.assertTrue(filter.accepts("w"));
+        Assert.assertTrue(TokenFilter.NONE.accepts("the"));
+    }
+
+    @Test(timeout = 10_000)
+    public void stopWordsWithCollidingStringHashes() {
+        // same String.hashCode, 2055877502
+        Assert.assertEquals("qenbsnid".hashCode(), "ughskmpo".hashCode());
+        final TokenFilter filter = new TokenFilter(Arrays.asList("qenbsnid", "ughskmpo"), 1, Integer.MAX_VALUE, false);
+        Assert.assertFalse(filter.accepts("qenbsnid"));
+        Assert.assertFalse(filter.accepts("UGHSKMPO"));
+        Assert.assertTrue(filter.accepts("qenbsnie"));
+
+        final List<String> stopWords = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            stopWords.add("w" + Integer.toString(i * 7919, 36));
+        }
+        final TokenFilter large = new TokenFilter(stopWords, 1, Integer.MAX_VALUE, false);
+        for (final String stopWord : stopWords) {
+            Assert.assertFalse(stopWord, large.accepts(stopWord));
+            Assert.assertTrue(stopWord, large.accepts(stopWord + "x"));
+        }
+    }
 }
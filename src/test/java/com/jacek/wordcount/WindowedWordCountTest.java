@@ -0,0 +1,81 @@
+package com.jacek.wordcount;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public final class WindowedWordCountTest {
+    private static final class ManualClock extends Clock {
+        private long millis = 0L;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    @Test
+    public void tokenWindowMatchesRecount() {
+        final int paneCount = 4;
+        final int tokensPerPane = 100;
+        final int k = 10;
+        final WindowedWordCounter windowed = new WindowedWordCounter(paneCount, tokensPerPane, k);
+        final Random random = new Random(5);
+        final List<String> tokens = new ArrayList<>();
+        for (int t = 1; t <= 5000; t++) {
+            final String word = "w" + (int) Math.abs(random.nextGaussian() * (t < 2500 ? 10 : 30));
+            tokens.add(word);
+            windowed.countWord(word);
+            if (t % 37 == 0) {
+                final int currentPane = (t - 1) / tokensPerPane;
+                final WordCounter expected = new WordCounter();
+                for (String token : tokens.subList(Math.max(0, (currentPane - paneCount + 1) * tokensPerPane), t)) {
+                    expected.countWord(token);
+                }
+                Assert.assertEquals(expected.size(), windowed.size());
+                Assert.assertEquals(expected.getCount("w0"), windowed.getCount("w0"));
+                Assert.assertEquals(expected.topWords(k), windowed.topWords(k));
+                Assert.assertEquals(expected.topWords(3), windowed.topWords(3));
+                Assert.assertEquals(expected.topWords(50), windowed.topWords(50));
+            }
+        }
+    }
+
+    @Test
+    public void timeWindow() {
+        final ManualClock clock = new ManualClock();
+        final WindowedWordCounter windowed = new WindowedWordCounter(5, Duration.ofMinutes(1), 2, clock);
+        windowed.countWord("a");
+        windowed.countWord("a");
+        clock.millis = Duration.ofMinutes(2).toMillis();
+        windowed.countWord("b");
+        Assert.assertEquals(windowed.topWords(2), Arrays.asList(
+                new WordCounter.WordCount("a", 2), new WordCounter.WordCount("b", 1)));
+        // "a" expires after 5 minutes, "b" after 7
+        clock.millis = Duration.ofMinutes(5).toMillis();
+        Assert.assertEquals(windowed.getCount("a"), 0);
+        Assert.assertEquals(windowed.topWords(2), Arrays.asList(new WordCounter.WordCount("b", 1)));
+        clock.millis = Duration.ofMinutes(60).toMillis();
+        Assert.assertEquals(windowed.size(), 0);
+        Assert.assertTrue(windowed.topWords(2).isEmpty());
+    }
+}
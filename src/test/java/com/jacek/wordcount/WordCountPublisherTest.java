@@ -0,0 +1,136 @@
+package com.jacek.wordcount;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public final class WordCountPublisherTest {
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    /**
+     * Queues snapshots, and "complete" or the error, requesting a number of snapshots up front
+     */
+    private static final class QueueingSubscriber implements WordCountPublisher.Subscriber {
+        private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        private final long initialRequest;
+        private WordCountPublisher.Subscription subscription;
+
+        QueueingSubscriber(final long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(final WordCountPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(final WordCountPublisher.Snapshot snapshot) {
+            signals.add(snapshot);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            signals.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+        }
+
+        Object next(final long timeoutMillis) throws InterruptedException {
+            return signals.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private List<File> manyFiles() throws Exception {
+        final List<File> files = new ArrayList<>();
+        final File rtMutex = TestUtils.resourceFile("rt-mutex-design.txt");
+        final File xfs = TestUtils.resourceFile("xfs-delayed-logging-design.txt");
+        for (int i = 0; i < 150; i++) {
+            final File copy = tmpFolder.newFile("file" + i + ".txt");
+            Files.copy(i % 3 == 0 ? xfs : rtMutex, copy);
+            files.add(copy);
+        }
+        return files;
+    }
+
+    @Test
+    public void deltasAddUpToCounts() throws Exception {
+        final List<File> files = manyFiles();
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final QueueingSubscriber subscriber = new QueueingSubscriber(Long.MAX_VALUE);
+        new WordCountPublisher(files, Duration.ZERO, 5, 2).subscribe(subscriber);
+
+        final WordCounter sum = new WordCounter();
+        int filesDone = 0;
+        WordCountPublisher.Snapshot snapshot;
+        do {
+            snapshot = (WordCountPublisher.Snapshot) subscriber.next(10_000L);
+            Assert.assertTrue(snapshot.getFilesDone() >= filesDone);
+            filesDone = snapshot.getFilesDone();
+            sum.addCounts(snapshot.getDelta(), 1);
+            Assert.assertEquals(snapshot.getTotalCount(), sum.getTotalCount());
+            Assert.assertEquals(snapshot.getTopWords(), sum.topWords(5));
+        } while (!snapshot.isLast());
+        Assert.assertEquals(subscriber.next(10_000L), "complete");
+
+        Assert.assertEquals(snapshot.getFilesDone(), files.size());
+        Assert.assertEquals(snapshot.getFilesTotal(), files.size());
+        Assert.assertEquals(snapshot.getUniqueWords(), expected.size());
+        Assert.assertEquals(snapshot.getCounts().toMap(), expected.toMap());
+        Assert.assertEquals(sum.toMap(), expected.toMap());
+    }
+
+    @Test
+    public void noSnapshotWithoutDemand() throws Exception {
+        final List<File> files = manyFiles();
+        final WordCounter expected = new SerialWordCounting().countWords(files);
+        final QueueingSubscriber subscriber = new QueueingSubscriber(0);
+        new WordCountPublisher(files, Duration.ZERO, 3, 2).subscribe(subscriber);
+
+        // counting goes on, and completes, without demand
+        Assert.assertNull(subscriber.next(1_000L));
+        subscriber.subscription.request(1);
+        final WordCountPublisher.Snapshot snapshot = (WordCountPublisher.Snapshot) subscriber.next(10_000L);
+        Assert.assertTrue(snapshot.isLast());
+        // all batches coalesced into a single delta
+        Assert.assertEquals(snapshot.getDelta().toMap(), expected.toMap());
+        Assert.assertEquals(snapshot.getTopWords(), expected.topWords(3));
+        Assert.assertEquals(subscriber.next(10_000L), "complete");
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        final QueueingSubscriber subscriber = new QueueingSubscriber(0);
+        new WordCountPublisher(manyFiles(), Duration.ZERO, 3, 1).subscribe(subscriber);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+        Assert.assertNull(subscriber.next(500L));
+    }
+
+    @Test
+    public void nonpositiveRequest() throws Exception {
+        final QueueingSubscriber subscriber = new QueueingSubscriber(0);
+        new WordCountPublisher(ImmutableList.of(TestUtils.resourceFile("rt-mutex-design.txt")), Duration.ZERO, 3, 1)
+                .subscribe(subscriber);
+        subscriber.subscription.request(0);
+        Assert.assertTrue(subscriber.next(10_000L) instanceof IllegalArgumentException);
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 public final class WordCountTest {
     @Test
@@ -114,4 +116,51 @@ public final class WordCountTest {
                 new WordCounter.WordCount("c", 1)
         ));
     }
+
+    @Test
+    public void testParallelExtraction() {
+        final WordCounter wc = new WordCounter();
+        final Random random = new Random(17);
+        for (int i = 0; i < 200_000; i++) {
+            // skewed distribution with many ties
+            wc.countWord("w" + (int) Math.abs(random.nextGaussian() * 1000));
+        }
+        Assert.assertEquals(wc.getTotalCount(), wc.getTotalCountInParallel());
+        Assert.assertEquals(wc.getTotalCount(), 200_000);
+        Assert.assertEquals(wc.toMap(), wc.toMapInParallel());
+        Assert.assertEquals(wc.getWordCountStream().collect(Collectors.toSet()),
+                wc.getParallelWordCountStream().collect(Collectors.toSet()));
+        for (int k : new int[]{0, 1, 20, 1000, 100_000}) {
+            Assert.assertEquals(wc.topWords(k), wc.topWordsInParallel(k));
+            Assert.assertEquals(wc.topWords(k), wc.topWordsWithHeap(k));
+        }
+    }
+
+    @Test
+    public void countsBeyondInt() {
+        final long big = Integer.MAX_VALUE;
+        final WordCounter wc = new WordCounter();
+        wc.countWord("the", big);
+        wc.countWord("the");
+        wc.countWord("a");
+        Assert.assertEquals(wc.getCount("the"), big + 1);
+        wc.countWord("the");
+        Assert.assertEquals(wc.getCount("the"), big + 2);
+
+        final WordCounter other = new WordCounter();
+        other.countWord("the", big);
+        other.countWord("a", big);
+        wc.mergeIn(other);
+        Assert.assertEquals(wc.getCount("the"), 2 * big + 2);
+        Assert.assertEquals(wc.getCount("a"), big + 1);
+        Assert.assertEquals(wc.getTotalCount(), 3 * big + 3);
+        Assert.assertEquals(wc.topWords(1).get(0), new WordCounter.WordCount("the", 2 * big + 2));
+
+        wc.addCounts(other, 2);
+        Assert.assertEquals(wc.getCount("the"), 4 * big + 2);
+        wc.addCounts(other, -4);
+        Assert.assertEquals(wc.getCount("the"), 2L);
+        Assert.assertEquals(wc.getCount("a"), 0L);
+        Assert.assertEquals(wc.size(), 1);
+    }
 }